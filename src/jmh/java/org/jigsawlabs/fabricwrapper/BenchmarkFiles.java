@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Synthetic libraries for the benchmarks, written to a temporary directory at setup and deleted at teardown. Entries
+ * are named like {@code com/example/library3/sub5/Entry21}, spread over eight packages per library.
+ */
+public final class BenchmarkFiles {
+    private BenchmarkFiles() {
+    }
+
+    @FunctionalInterface
+    public interface LibraryWriter {
+        void write(int library, ZipOutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes {@code library-<n>.jar} for every library into {@code dir}, with the entries added by {@code writer}.
+     */
+    public static List<Path> writeLibraries(Path dir, int libraries, LibraryWriter writer) throws IOException {
+        List<Path> jars = new ArrayList<>(libraries);
+
+        for (int i = 0; i < libraries; i++) {
+            Path jar = dir.resolve("library-" + i + ".jar");
+
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+                writer.write(i, out);
+            }
+
+            jars.add(jar);
+        }
+
+        return jars;
+    }
+
+    public static URL[] toUrls(List<Path> jars) throws IOException {
+        URL[] urls = new URL[jars.size()];
+
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = jars.get(i).toUri().toURL();
+        }
+
+        return urls;
+    }
+
+    /**
+     * The internal name of entry {@code entry} of library {@code library}, without a {@code .class} suffix.
+     */
+    public static String entryName(int library, int entry) {
+        return String.format("com/example/library%d/sub%d/Entry%d", library, entry % 8, entry);
+    }
+
+    /**
+     * A class file for an empty class, enough to be defined without generating any code.
+     */
+    public static byte[] emptyClass(String internalName) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0); // minor version
+        out.writeShort(52); // Java 8
+        out.writeShort(5); // constant pool size + 1
+        out.writeByte(7); // #1 class #3
+        out.writeShort(3);
+        out.writeByte(7); // #2 class #4
+        out.writeShort(4);
+        out.writeByte(1); // #3
+        out.writeUTF(internalName);
+        out.writeByte(1); // #4
+        out.writeUTF("java/lang/Object");
+        out.writeShort(0x0021); // public super
+        out.writeShort(1); // this class
+        out.writeShort(2); // super class
+        out.writeShort(0); // interfaces
+        out.writeShort(0); // fields
+        out.writeShort(0); // methods
+        out.writeShort(0); // attributes
+        return bytes.toByteArray();
+    }
+
+    public static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
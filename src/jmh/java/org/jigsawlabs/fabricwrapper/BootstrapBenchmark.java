@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper;
+
+import org.jigsawlabs.fabricwrapper.loader.launch.server.InjectingURLClassLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of getting from the application class loader to the loader the server runs on, the legacy bootstrap against the
+ * single swap. Both load the wrapper's startup classes in each loader they create. {@code liveHeapMb} stands in for
+ * what is already on the heap at that point, it is what the forced full collections of the legacy bootstrap have to trace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(value = 2, jvmArgsAppend = "-Xmx1g")
+public class BootstrapBenchmark {
+    private static final String[] STARTUP_CLASSES = {
+            "org.jigsawlabs.fabricwrapper.FabricWrapper",
+            "org.jigsawlabs.fabricwrapper.installer.InstallLock",
+            "org.jigsawlabs.fabricwrapper.installer.util.MetaHandler",
+            "org.jigsawlabs.fabricwrapper.installer.util.Utils",
+            "org.jigsawlabs.fabricwrapper.installer.server.ServerInstaller",
+            "org.jigsawlabs.fabricwrapper.loader.launch.server.ClassPathIndex",
+            "org.jigsawlabs.fabricwrapper.loader.util.Arguments"
+    };
+
+    @Param({"0", "256"})
+    public int liveHeapMb;
+
+    private URL[] urls;
+    private ClassLoader systemLoader;
+    private List<byte[]> liveHeap;
+    private final List<InjectingURLClassLoader> created = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        urls = new URL[] { BootstrapBenchmark.class.getProtectionDomain().getCodeSource().getLocation() };
+        systemLoader = ClassLoader.getSystemClassLoader();
+        liveHeap = new ArrayList<>();
+
+        // many small objects like a real heap, a few large arrays would cost a collection almost nothing
+        for (int i = 0; i < liveHeapMb * 1024; i++) {
+            liveHeap.add(new byte[1024]);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void restoreLoader() throws IOException {
+        WrapperPreLoad.replaceLoader(systemLoader, false);
+
+        for (InjectingURLClassLoader loader : created) {
+            loader.close();
+        }
+
+        created.clear();
+    }
+
+    @Benchmark
+    public ClassLoader legacy() throws ClassNotFoundException {
+        InjectingURLClassLoader preLoader = create(systemLoader);
+        WrapperPreLoad.replaceLoader(preLoader, true);
+        loadStartupClasses(preLoader);
+
+        InjectingURLClassLoader serverLoader = create(preLoader);
+        WrapperPreLoad.replaceLoader(serverLoader, true);
+        loadStartupClasses(serverLoader);
+        return serverLoader;
+    }
+
+    @Benchmark
+    public ClassLoader singleStage() throws ClassNotFoundException {
+        loadStartupClasses(systemLoader);
+
+        InjectingURLClassLoader serverLoader = create(systemLoader);
+        WrapperPreLoad.replaceLoader(serverLoader, false);
+        loadStartupClasses(serverLoader);
+        return serverLoader;
+    }
+
+    private InjectingURLClassLoader create(ClassLoader parent) {
+        InjectingURLClassLoader loader = new InjectingURLClassLoader(urls, parent);
+        created.add(loader);
+        return loader;
+    }
+
+    private static void loadStartupClasses(ClassLoader loader) throws ClassNotFoundException {
+        for (String name : STARTUP_CLASSES) {
+            Class.forName(name, false, loader);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper;
+
+import org.jigsawlabs.fabricwrapper.installer.util.MetaDocuments;
+import org.jigsawlabs.fabricwrapper.installer.util.MetaHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolving the {@code fabric.gameVersion} argument, both explicit versions checked against the version pattern and
+ * {@code latest/...} looked up in game versions that were already loaded from {@link MetaDocuments}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseVersionBenchmark {
+    @Param({"1.17.1", "21w41a", "1.17-pre1", "latest/stable", "latest/snapshot"})
+    public String version;
+
+    private Path gameVersions;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        gameVersions = Files.createTempFile("game-versions", ".json");
+        Files.write(gameVersions, MetaDocuments.gameVersions().getBytes(StandardCharsets.UTF_8));
+        FabricWrapper.GAME_VERSION_META = new MetaHandler(gameVersions.toUri().toString());
+        FabricWrapper.GAME_VERSION_META.load();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(gameVersions);
+    }
+
+    @Benchmark
+    public String parseVersion() {
+        return FabricWrapper.parseVersion(version);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.server;
+
+import org.jigsawlabs.fabricwrapper.BenchmarkFiles;
+import org.jigsawlabs.fabricwrapper.installer.util.InstallerProgress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+
+/**
+ * Building the launch jar from synthetic libraries. Every library has compressed class-like entries, which are copied
+ * as they are, and a service definition shared with the other libraries, which has to be merged and compressed again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LaunchJarBenchmark {
+    private static final int ENTRIES_PER_LIBRARY = 300;
+
+    private static final InstallerProgress SILENT = new InstallerProgress() {
+        @Override
+        public void updateProgress(String text) {
+        }
+
+        @Override
+        public void error(Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+    };
+
+    @Param({"8", "48"})
+    public int libraries;
+
+    private Path dir;
+    private Path launchJar;
+    private List<Path> libraryFiles;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("launch-jar-benchmark");
+        launchJar = dir.resolve("fabric-server-launch.jar");
+        Random random = new Random(42);
+        byte[] data = new byte[4096];
+
+        libraryFiles = BenchmarkFiles.writeLibraries(dir, libraries, (i, out) -> {
+            out.putNextEntry(new ZipEntry("META-INF/services/com.example.Service"));
+            out.write(("# providers of library " + i + "\ncom.example.library" + i + ".ServiceImpl\n").getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+
+            for (int j = 0; j < ENTRIES_PER_LIBRARY; j++) {
+                // a small alphabet compresses about as well as class files do
+                int length = 512 + random.nextInt(data.length - 512);
+
+                for (int k = 0; k < length; k++) {
+                    data[k] = (byte) ('a' + random.nextInt(12));
+                }
+
+                out.putNextEntry(new ZipEntry(BenchmarkFiles.entryName(i, j) + ".class"));
+                out.write(data, 0, length);
+                out.closeEntry();
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(dir);
+    }
+
+    @Benchmark
+    public Path makeLaunchJar() throws IOException {
+        ServerInstaller.makeLaunchJar(launchJar, "net.fabricmc.loader.launch.knot.KnotServer", "net.fabricmc.loader.launch.server.FabricServerLauncher", "benchmark", libraryFiles, SILENT);
+        return launchJar;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing one {@code META-INF/services} file, with the license header and comments most of them have.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceDefinitionBenchmark {
+    private static final String NAME = "META-INF/services/com.example.Service";
+
+    @Param({"1", "20"})
+    public int providers;
+
+    private byte[] definition;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < 12; i++) {
+            text.append("# Licensed under the Apache License, Version 2.0 (the \"License\"), line ").append(i).append('\n');
+        }
+
+        text.append('\n');
+
+        for (int i = 0; i < providers; i++) {
+            text.append("com.example.provider").append(i).append(".ServiceImpl").append(i % 4 == 0 ? " # default\n" : "\n");
+        }
+
+        definition = text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Map<String, Set<String>> parseServiceDefinition() throws IOException {
+        Map<String, Set<String>> services = new HashMap<>();
+        ServerInstaller.parseServiceDefinition(NAME, new ByteArrayInputStream(definition), services);
+        return services;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic meta documents in the shape of the Fabric meta game versions and the Mojang version manifest, generated
+ * instead of checked in. Both list the same {@value #VERSIONS} versions newest first, a release after every six
+ * snapshots. The hashes are the SHA-1 of the id and the urls point to an unresolvable host, nothing refers to real
+ * packages.
+ */
+public final class MetaDocuments {
+	public static final int VERSIONS = 470;
+
+	private MetaDocuments() {
+	}
+
+	public static String gameVersions() {
+		StringBuilder json = new StringBuilder("[\n");
+		List<String> ids = ids();
+
+		for (int i = 0; i < ids.size(); i++) {
+			if (i > 0) json.append(",\n");
+			json.append("  {\n    \"version\": \"").append(ids.get(i)).append("\",\n    \"stable\": ").append(isRelease(ids.get(i))).append("\n  }");
+		}
+
+		return json.append("\n]\n").toString();
+	}
+
+	public static String versionManifest() {
+		List<String> ids = ids();
+		String latestRelease = ids.stream().filter(MetaDocuments::isRelease).findFirst().get();
+		StringBuilder json = new StringBuilder("{\n  \"latest\": {\n    \"release\": \"").append(latestRelease)
+				.append("\",\n    \"snapshot\": \"").append(ids.get(0)).append("\"\n  },\n  \"versions\": [\n");
+		LocalDate date = LocalDate.of(2011, 1, 1).plusWeeks(ids.size());
+
+		for (int i = 0; i < ids.size(); i++) {
+			String id = ids.get(i);
+			String sha1 = sha1(id);
+			String time = date.minusWeeks(i) + "T12:00:00+00:00";
+
+			if (i > 0) json.append(",\n");
+			json.append("    {\n      \"id\": \"").append(id)
+					.append("\",\n      \"type\": \"").append(isRelease(id) ? "release" : "snapshot")
+					.append("\",\n      \"url\": \"https://meta.invalid/v1/packages/").append(sha1).append('/').append(id)
+					.append(".json\",\n      \"time\": \"").append(time)
+					.append("\",\n      \"releaseTime\": \"").append(time)
+					.append("\",\n      \"sha1\": \"").append(sha1)
+					.append("\",\n      \"complianceLevel\": 1\n    }");
+		}
+
+		return json.append("\n  ]\n}\n").toString();
+	}
+
+	private static List<String> ids() {
+		List<String> ids = new ArrayList<>(VERSIONS);
+		int releases = 0;
+
+		// oldest first: weekly snapshots like 21w41a, every seventh version a release like 1.16.2
+		for (int index = 0; index < VERSIONS; index++) {
+			if (index % 7 == 6) {
+				int major = releases / 4;
+				int minor = releases++ % 4;
+				ids.add(0, minor == 0 ? "1." + major : "1." + major + "." + minor);
+			} else {
+				ids.add(0, String.format("%dw%02da", 11 + index / 52, index % 52 + 1));
+			}
+		}
+
+		return ids;
+	}
+
+	private static boolean isRelease(String id) {
+		return id.startsWith("1.");
+	}
+
+	private static String sha1(String id) {
+		try {
+			return Utils.bytesToHex(MessageDigest.getInstance("SHA-1").digest(id.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
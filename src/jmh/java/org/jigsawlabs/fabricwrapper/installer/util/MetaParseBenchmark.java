@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing the version lists read at every start, from {@link MetaDocuments} in the shape of the Fabric meta game
+ * versions and the Mojang version manifest. The documents are already in memory, like they are after {@link MetaCache}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetaParseBenchmark {
+	private String gameVersions;
+	private String versionManifest;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		gameVersions = MetaDocuments.gameVersions();
+		versionManifest = MetaDocuments.versionManifest();
+	}
+
+	@Benchmark
+	public List<MetaHandler.GameVersion> gameVersions() throws IOException {
+		return MetaHandler.parse(new StringReader(gameVersions));
+	}
+
+	@Benchmark
+	public LauncherMeta versionManifest() throws IOException {
+		return LauncherMeta.parse(new StringReader(versionManifest));
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.loader.launch.server;
+
+import org.jigsawlabs.fabricwrapper.BenchmarkFiles;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+
+/**
+ * Lookups from several threads at once, like the server's worker threads and mods loading classes during startup.
+ * Hits are classes the loader already defined, misses go through to the platform loader. Each thread walks its own
+ * sequence of names, so the threads contend on the loader and not on the same class loading lock.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ClassLoaderContentionBenchmark {
+	private static final int JARS = 16;
+	private static final int CLASSES_PER_JAR = 256;
+
+	@Param({"true", "false"})
+	public boolean indexed;
+
+	private Path dir;
+	private InjectingURLClassLoader loader;
+	private String[] hits;
+	private String[] misses;
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			next = (int) (Thread.currentThread().getId() * 7919);
+		}
+
+		int next(int length) {
+			return Math.floorMod(next++, length);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, ClassNotFoundException {
+		dir = Files.createTempDirectory("loader-contention-benchmark");
+		hits = new String[JARS * CLASSES_PER_JAR];
+		misses = new String[hits.length];
+		URL[] urls = BenchmarkFiles.toUrls(BenchmarkFiles.writeLibraries(dir, JARS, (i, out) -> {
+			for (int j = 0; j < CLASSES_PER_JAR; j++) {
+				String name = BenchmarkFiles.entryName(i, j);
+				out.putNextEntry(new ZipEntry(name + ".class"));
+				out.write(BenchmarkFiles.emptyClass(name));
+				out.closeEntry();
+
+				hits[i * CLASSES_PER_JAR + j] = name.replace('/', '.');
+				misses[i * CLASSES_PER_JAR + j] = name.replace('/', '.') + "Missing";
+			}
+		}));
+
+		ClassPathIndex index = indexed ? ClassPathIndex.build(urls) : null;
+		loader = new InjectingURLClassLoader(urls, ClassLoader.getPlatformClassLoader(), index);
+
+		for (String name : hits) {
+			loader.loadClass(name);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		loader.close();
+		BenchmarkFiles.delete(dir);
+	}
+
+	@Benchmark
+	public Class<?> hit(Cursor cursor) throws ClassNotFoundException {
+		return loader.loadClass(hits[cursor.next(hits.length)]);
+	}
+
+	@Benchmark
+	public Object miss(Cursor cursor) {
+		try {
+			return loader.loadClass(misses[cursor.next(misses.length)]);
+		} catch (ClassNotFoundException e) {
+			return e;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.loader.launch.server;
+
+import org.jigsawlabs.fabricwrapper.BenchmarkFiles;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+
+/**
+ * Lookups that miss the server class path, the common case for platform classes and for Mixin probing resources.
+ * Run with the {@code gc} profiler to compare the allocations per miss, most of which are exceptions without the index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassLoaderMissBenchmark {
+	private static final int JARS = 24;
+	private static final int ENTRIES_PER_JAR = 400;
+
+	@Param({"true", "false"})
+	public boolean indexed;
+
+	private Path dir;
+	private InjectingURLClassLoader loader;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("loader-benchmark");
+		URL[] urls = BenchmarkFiles.toUrls(BenchmarkFiles.writeLibraries(dir, JARS, (i, out) -> {
+			for (int j = 0; j < ENTRIES_PER_JAR; j++) {
+				out.putNextEntry(new ZipEntry(BenchmarkFiles.entryName(i, j) + ".class"));
+				out.write(new byte[64]);
+				out.closeEntry();
+			}
+		}));
+
+		ClassPathIndex index = indexed ? ClassPathIndex.build(urls) : null;
+		loader = new InjectingURLClassLoader(urls, ClassLoader.getPlatformClassLoader(), index);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		loader.close();
+		BenchmarkFiles.delete(dir);
+	}
+
+	@Benchmark
+	public Class<?> platformClass() throws ClassNotFoundException {
+		return loader.loadClass("java.util.ArrayList");
+	}
+
+	@Benchmark
+	public Object platformMiss() {
+		return loadMissing("javax.annotation.Nonnull");
+	}
+
+	@Benchmark
+	public Object libraryMiss() {
+		return loadMissing("com.example.library12.sub3.Missing");
+	}
+
+	@Benchmark
+	public URL resourceMiss() {
+		return loader.getResource("com/example/library12/sub3/missing.json");
+	}
+
+	@Benchmark
+	public URL resourceHit() {
+		return loader.getResource("com/example/library23/sub7/Entry399.class");
+	}
+
+	private Object loadMissing(String name) {
+		try {
+			return loader.loadClass(name);
+		} catch (ClassNotFoundException e) {
+			return e;
+		}
+	}
+}
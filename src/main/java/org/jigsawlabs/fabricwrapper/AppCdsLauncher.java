@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jigsawlabs.fabricwrapper.installer.InstallLock;
+import org.jigsawlabs.fabricwrapper.installer.util.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the server in a child JVM that uses an Application Class Data Sharing archive of the server class path.
+ *
+ * <p>The first launch records the classes the JVM loads with {@code -XX:DumpLoadedClassList}, once the server stops
+ * an archive is dumped from that list. Later launches start the child with {@code -XX:SharedArchiveFile}, which maps
+ * those classes instead of loading and verifying them again.</p>
+ *
+ * <p>Everything lives in {@code .fabric-installer/cds}, named after a key made of the install lock, the size and
+ * modification time of every jar and the JVM build, files with any other key are deleted.
+ * The child gets the JVM options of the wrapper, except debugger and class sharing ones.</p>
+ *
+ * <p>The wrapper keeps running, and keeps its heap, while the server runs. When {@link #JVM_ARGS_PROPERTY} is set the
+ * child gets the heap options from it instead of the wrapper's, so the wrapper itself can be started with a small heap.</p>
+ */
+public final class AppCdsLauncher {
+    public static final String PROPERTY = "fabric.wrapper.cds";
+    public static final String JVM_ARGS_PROPERTY = "fabric.wrapper.cdsJvmArgs";
+
+    private static final Logger LOGGER = LogManager.getLogger("FabricWrapper");
+    private static final List<String> IGNORED_OPTIONS = Arrays.asList("-Xshare", "-XX:SharedArchiveFile", "-XX:SharedClassListFile",
+            "-XX:DumpLoadedClassList", "-XX:ArchiveClassesAtExit", "-agentlib:jdwp", "-Xrunjdwp", "-D" + JVM_ARGS_PROPERTY + "=");
+    private static final List<String> HEAP_OPTIONS = Arrays.asList("-Xms", "-Xmx", "-Xmn", "-XX:InitialHeapSize", "-XX:MaxHeapSize",
+            "-XX:MinHeapSize", "-XX:NewSize", "-XX:MaxNewSize", "-XX:InitialRAMPercentage", "-XX:MaxRAMPercentage", "-XX:MinRAMPercentage",
+            "-XX:+AlwaysPreTouch", "-XX:-AlwaysPreTouch");
+
+    private AppCdsLauncher() { }
+
+    /**
+     * Starts {@code mainClass} in a child JVM with {@code classPath} and waits for it to exit.
+     *
+     * @return the exit code of the server
+     */
+    public static int launch(Path dir, List<URL> classPath, String mainClass, String[] args) throws IOException {
+        List<String> files = new ArrayList<>();
+
+        for (URL url : classPath) {
+            try {
+                files.add(Paths.get(url.toURI()).toString());
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid class path entry " + url, e);
+            }
+        }
+
+        Path cdsDir = dir.resolve(".fabric-installer").resolve("cds");
+        Files.createDirectories(cdsDir);
+
+        String key = getKey(dir, files);
+        deleteOthers(cdsDir, key);
+
+        Path archive = cdsDir.resolve(key + ".jsa");
+        Path classList = cdsDir.resolve(key + ".classlist");
+        String joinedClassPath = String.join(File.pathSeparator, files);
+
+        List<String> command = new ArrayList<>();
+        command.add(getJavaExecutable());
+        command.addAll(getJvmOptions());
+
+        boolean recording = false;
+
+        if (Files.isRegularFile(archive)) {
+            LOGGER.info("Starting server with class data sharing archive {}.", dir.relativize(archive));
+            command.add("-XX:SharedArchiveFile=" + archive);
+            command.add("-Xshare:auto");
+        } else {
+            LOGGER.info("No class data sharing archive for this install yet, recording the loaded classes to create one.");
+            Files.deleteIfExists(classList);
+            command.add("-XX:DumpLoadedClassList=" + classList);
+            recording = true;
+        }
+
+        command.add("-cp");
+        command.add(joinedClassPath);
+        command.add(mainClass);
+        command.addAll(Arrays.asList(args));
+
+        int exitCode = run(new ProcessBuilder(command).inheritIO());
+
+        if (recording && Files.isRegularFile(classList)) {
+            dumpArchive(cdsDir, classList, archive, joinedClassPath);
+        }
+
+        return exitCode;
+    }
+
+    private static void dumpArchive(Path cdsDir, Path classList, Path archive, String classPath) throws IOException {
+        LOGGER.info("Creating class data sharing archive, the next start will use it.");
+        Path tmp = archive.resolveSibling(archive.getFileName() + ".tmp");
+
+        List<String> command = new ArrayList<>();
+        command.add(getJavaExecutable());
+        command.add("-Xshare:dump");
+        command.add("-XX:SharedClassListFile=" + classList);
+        command.add("-XX:SharedArchiveFile=" + tmp);
+        command.add("-cp");
+        command.add(classPath);
+
+        Path log = cdsDir.resolve("dump.log");
+        int exitCode = run(new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()));
+
+        if (exitCode == 0 && Files.isRegularFile(tmp)) {
+            Files.move(tmp, archive, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(tmp);
+            LOGGER.warn("Failed to create the class data sharing archive, see {}.", log);
+        }
+    }
+
+    private static int run(ProcessBuilder builder) throws IOException {
+        Process process = builder.start();
+
+        // stopping the wrapper stops the server as well, the same way a stop signal would
+        Thread shutdownHook = new Thread(() -> {
+            process.destroy();
+
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "FabricWrapper CDS Shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        try {
+            return process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the server process");
+        } finally {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // already shutting down, the hook takes care of the process
+            }
+        }
+    }
+
+    private static String getKey(Path dir, List<String> files) throws IOException {
+        StringBuilder key = new StringBuilder();
+        Path lockFile = InstallLock.getPath(dir);
+
+        if (Files.isRegularFile(lockFile)) {
+            key.append(Utils.sha1String(lockFile)).append('\n');
+        }
+
+        for (String file : files) {
+            BasicFileAttributes attributes = Files.readAttributes(Paths.get(file), BasicFileAttributes.class);
+            key.append(file).append(':').append(attributes.size()).append(':').append(attributes.lastModifiedTime().toMillis()).append('\n');
+        }
+
+        key.append(System.getProperty("java.home")).append(':').append(System.getProperty("java.vm.version"));
+        return Utils.sha1String(key.toString());
+    }
+
+    private static void deleteOthers(Path cdsDir, String key) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cdsDir)) {
+            for (Path file : stream) {
+                if (!file.getFileName().toString().startsWith(key) && !file.getFileName().toString().equals("dump.log")) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static List<String> getJvmOptions() {
+        List<String> options = new ArrayList<>();
+        String childOptions = System.getProperty(JVM_ARGS_PROPERTY, "").trim();
+        List<String> inheritedHeapOptions = new ArrayList<>();
+
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (IGNORED_OPTIONS.stream().anyMatch(option::startsWith)) continue;
+
+            if (HEAP_OPTIONS.stream().anyMatch(option::startsWith)) {
+                // the child's heap comes from the property when it is set
+                if (!childOptions.isEmpty()) continue;
+
+                inheritedHeapOptions.add(option);
+            }
+
+            options.add(option);
+        }
+
+        if (!childOptions.isEmpty()) {
+            options.addAll(Arrays.asList(childOptions.split("\\s+")));
+        } else if (!inheritedHeapOptions.isEmpty()) {
+            LOGGER.warn("The server JVM uses the heap options {} of the wrapper, which keeps its own heap while the server runs. "
+                    + "Start the wrapper with a small heap and pass the server's heap options with -D{}=\"...\" instead.", inheritedHeapOptions, JVM_ARGS_PROPERTY);
+        }
+
+        return options;
+    }
+
+    private static String getJavaExecutable() {
+        boolean windows = System.getProperty("os.name").toLowerCase().startsWith("windows");
+        return Paths.get(System.getProperty("java.home"), "bin", windows ? "java.exe" : "java").toString();
+    }
+}
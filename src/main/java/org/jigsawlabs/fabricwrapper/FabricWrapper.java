@@ -17,32 +17,32 @@
 
 package org.jigsawlabs.fabricwrapper;
 
-import com.google.gson.JsonObject;
 import com.mojang.util.QueueLogAppender;
 import com.mojang.util.UUIDTypeAdapter;
 import net.minecrell.terminalconsole.util.LoggerNamePatternSelector;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.util.PropertiesUtil;
+import org.jigsawlabs.fabricwrapper.installer.InstallLock;
+import org.jigsawlabs.fabricwrapper.installer.IntegrityVerifier;
 import org.jigsawlabs.fabricwrapper.installer.LoaderVersion;
-import org.jigsawlabs.fabricwrapper.installer.server.MinecraftServerDownloader;
 import org.jigsawlabs.fabricwrapper.installer.server.ServerInstaller;
+import org.jigsawlabs.fabricwrapper.installer.util.BootReport;
 import org.jigsawlabs.fabricwrapper.installer.util.InstallerProgress;
+import org.jigsawlabs.fabricwrapper.installer.util.LauncherMeta;
+import org.jigsawlabs.fabricwrapper.installer.util.MetaCache;
 import org.jigsawlabs.fabricwrapper.installer.util.MetaHandler;
 import org.jigsawlabs.fabricwrapper.installer.util.Reference;
 import org.jigsawlabs.fabricwrapper.installer.util.Utils;
 import org.jigsawlabs.fabricwrapper.jumploader.launch.PreLaunchDispatcher;
 import org.jigsawlabs.fabricwrapper.jumploader.launch.classpath.ClasspathReplacer;
-import org.jigsawlabs.fabricwrapper.jumploader.util.RequestUtils;
+import org.jigsawlabs.fabricwrapper.loader.launch.server.ClassPathIndex;
+import org.jigsawlabs.fabricwrapper.loader.launch.server.ClassPrefetcher;
 import org.jigsawlabs.fabricwrapper.loader.launch.server.InjectingURLClassLoader;
+import org.jigsawlabs.fabricwrapper.loader.launch.server.LaunchArchive;
 import org.jigsawlabs.fabricwrapper.loader.util.Arguments;
-import sun.misc.Unsafe;
 
 import java.io.*;
-import java.lang.invoke.MethodHandle;
-import java.lang.invoke.MethodHandles;
-import java.lang.invoke.MethodType;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URISyntaxException;
@@ -91,23 +91,12 @@ public class FabricWrapper {
     }
 
     public static void replaceLoader(URLClassLoader newLoader) {
-        try {
-            Field theUnsafe = Unsafe.class.getDeclaredField("theUnsafe");
-            theUnsafe.setAccessible(true);
-            Unsafe u = (Unsafe) theUnsafe.get(null);
-
-            Class<MethodHandles.Lookup> lookupClass = MethodHandles.Lookup.class;
-            MethodHandles.Lookup impl_lookup = (MethodHandles.Lookup) u.getObject(lookupClass, u.staticFieldOffset(lookupClass.getDeclaredField("IMPL_LOOKUP")));
-            MethodHandle setter = impl_lookup.findStaticSetter(ClassLoader.class, "scl", ClassLoader.class);
-            impl_lookup.findVirtual(ClassLoader.getSystemClassLoader().getClass(), "finalize", MethodType.methodType(void.class)).invoke(ClassLoader.getSystemClassLoader());
-            setter.invokeWithArguments(newLoader);
-            System.gc();
-        } catch (Throwable e) {
-            throw new RuntimeException("Failed to replace system ClassLoader", e);
-        }
+        WrapperPreLoad.replaceLoader(newLoader);
     }
 
+    @SuppressWarnings("try")
     public static void main(String[] args) throws Throwable {
+        BootReport.start();
         LOGGER.debug("Loading data.");
         GAME_VERSION_META = new MetaHandler(Reference.getMetaServerEndpoint("v2/versions/game"));
         LOADER_META = new MetaHandler(Reference.getMetaServerEndpoint("v2/versions/loader"));
@@ -116,69 +105,96 @@ public class FabricWrapper {
 
         loadProperties();
 
-        gameVersion = arguments.get(Arguments.GAME_VERSION);
+        String requestedVersion = arguments.get(Arguments.GAME_VERSION);
 
-        if (gameVersion == null) {
-            gameVersion = System.getProperty("fabric.gameVersion");
+        if (requestedVersion == null) {
+            requestedVersion = System.getProperty("fabric.gameVersion");
         }
 
-        if (gameVersion == null) {
-            gameVersion = parseVersion(properties.getProperty("gameVersion"));
-        }
+        boolean explicitVersion = requestedVersion != null;
 
-        InstallerProgress.CONSOLE.updateProgress(Utils.BUNDLE.getString("progress.start.loader"));
-        try {
-            LOADER_META.load();
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to load Fabric Loader meta.", e);
+        if (requestedVersion == null) {
+            requestedVersion = properties.getProperty("gameVersion");
         }
-        loaderVersion = new LoaderVersion(LOADER_META.getLatestVersion(false).getVersion());
+
         Path dir = Paths.get(".").toAbsolutePath().normalize();
         if (!Files.isDirectory(dir)) {
             throw new FileNotFoundException("Server directory not found at " + dir + " or not a directory");
         }
 
-        try {
-            ServerInstaller.install(dir, loaderVersion, gameVersion, InstallerProgress.CONSOLE);
-            InstallerProgress.CONSOLE.updateProgress(Utils.BUNDLE.getString("progress.done.loader"));
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to install Fabric Loader", e);
+        InstallLock lock = InstallLock.read(dir);
+
+        if (arguments.hasFlag(Arguments.VERIFY)) {
+            System.exit(verify(dir, lock) ? 0 : 1);
         }
-        try {
-            InstallerProgress.CONSOLE.updateProgress(Utils.BUNDLE.getString("progress.download.minecraft"));
-            Path serverJar = dir.resolve("server.jar");
-            MinecraftServerDownloader downloader = new MinecraftServerDownloader(gameVersion);
-            downloader.downloadMinecraftServer(serverJar);
-            loadUrls.add(serverJar.toUri().toURL());
-            InstallerProgress.CONSOLE.updateProgress(Utils.BUNDLE.getString("progress.done.server"));
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to install Minecraft Server", e);
+
+        boolean locked;
+
+        try (BootReport.Scope ignored = BootReport.begin("installLock")) {
+            locked = lock != null && lock.serverJar != null && lock.matches(dir, requestedVersion);
+            BootReport.cache("installLock", locked);
+        }
+
+        if (locked) {
+            LOGGER.info("Install lock matches the installed files, skipping installation.");
+            loadUrls.addAll(lock.getLibraryUrls(dir));
+            loadUrls.add(lock.serverJar.resolve(dir).toUri().toURL());
+        } else {
+            lock = install(dir, requestedVersion, explicitVersion);
+        }
+
+        gameVersion = lock.gameVersion;
+        loaderVersion = new LoaderVersion(lock.loaderVersion);
+        BootReport.setAttribute("gameVersion", gameVersion);
+        BootReport.setAttribute("loaderVersion", lock.loaderVersion);
+        Path reportFile = dir.resolve(".fabric-installer").resolve(BootReport.FILE_NAME);
+
+        if (arguments.hasFlag(Arguments.EXPORT_LAUNCH_JAR) || Boolean.getBoolean("fabric.wrapper.exportLaunchJar")) {
+            try (BootReport.Scope ignored = BootReport.begin("launchJar")) {
+                ServerInstaller.exportLaunchJar(dir, lock, dir.resolve(ServerInstaller.DEFAULT_LAUNCH_JAR_NAME), InstallerProgress.CONSOLE);
+            }
+        }
+
+        if (arguments.hasFlag(Arguments.CDS) || Boolean.getBoolean(AppCdsLauncher.PROPERTY)) {
+            BootReport.finish(reportFile);
+            System.exit(AppCdsLauncher.launch(dir, loadUrls, lock.mainClass, arguments.toArray()));
         }
 
         loadUrls.add(FabricWrapper.class.getProtectionDomain().getCodeSource().getLocation());
 
-        try {
-            ClasspathReplacer.replaceClasspath(loadUrls);
-        } catch (URISyntaxException e) {
-            LOGGER.error("Failed to parse URL in replacement classpath: " + e.getClass().getTypeName() + ": " + e.getLocalizedMessage());
-            throw new RuntimeException("Failed to parse URL in replacement classpath", e);
+        ClassPathIndex index;
+        InjectingURLClassLoader newLoader;
+
+        try (BootReport.Scope ignored = BootReport.begin("classLoader")) {
+            try {
+                ClasspathReplacer.replaceClasspath(loadUrls);
+            } catch (URISyntaxException e) {
+                LOGGER.error("Failed to parse URL in replacement classpath: " + e.getClass().getTypeName() + ": " + e.getLocalizedMessage());
+                throw new RuntimeException("Failed to parse URL in replacement classpath", e);
+            }
+
+            URL[] urls = loadUrls.toArray(new URL[]{});
+            index = ClassPathIndex.load(dir.resolve(".fabric-installer").resolve("class-index.bin"), urls);
+            LaunchArchive archive = Boolean.getBoolean(LaunchArchive.PROPERTY) ? openLaunchArchive(dir.resolve(".fabric-installer").resolve("launch-archive.bin"), index) : null;
+            newLoader = new InjectingURLClassLoader(urls, FabricWrapper.class.getClassLoader(), index, archive);
+            replaceLoader(newLoader);
+            Thread.currentThread().setContextClassLoader(newLoader);
         }
 
-        URLClassLoader newLoader = new InjectingURLClassLoader(loadUrls.toArray(new URL[]{}), FabricWrapper.class.getClassLoader());
-        replaceLoader(newLoader);
-        Thread.currentThread().setContextClassLoader(newLoader);
+        try (BootReport.Scope ignored = BootReport.begin("preLaunch")) {
+            PreLaunchDispatcher.dispatch(newLoader);
+        }
 
-        PreLaunchDispatcher.dispatch(newLoader);
+        if (ClassPrefetcher.isEnabled()) {
+            ClassPrefetcher.create(dir.resolve(".fabric-installer").resolve("class-trace.txt"), index).start(newLoader);
+        }
 
-        String loaderJsonPath = String.format("v2/versions/loader/%s/%s", gameVersion, loaderVersion.name);
-        String loaderJsonUrl = Reference.getMetaServerEndpoint(loaderJsonPath);
-        JsonObject loaderJson = RequestUtils.getJson(loaderJsonUrl).getAsJsonObject();
-        String mainClassPath = loaderJson.getAsJsonObject("launcherMeta").getAsJsonObject("mainClass").get("server").getAsString();
+        String mainClassPath = lock.mainClass;
 
         int preLaunchRunningThreads = Thread.currentThread().getThreadGroup().activeCount();
 
         LOGGER.info("Starting Fabric server.");
-        try {
+        try (BootReport.Scope ignored = BootReport.begin("serverMain")) {
             Class<?> mainClass = newLoader.loadClass(mainClassPath);
             Method main = mainClass.getMethod("main", String[].class);
             main.invoke(null, (Object) arguments.toArray());
@@ -186,6 +202,8 @@ public class FabricWrapper {
             throw new RuntimeException(String.format("Failed to load server. Got an exception when trying to invoke {Class: \"%s\", Method: \"main(String[] args)\", Arguments: \"%s\"}", mainClassPath, arguments.toList()), e);
         } catch (InvocationTargetException e) {
             throw new RuntimeException(e.getTargetException());
+        } finally {
+            BootReport.finish(reportFile);
         }
 
         if (Thread.currentThread().getThreadGroup().activeCount() - preLaunchRunningThreads <= 0) {
@@ -194,6 +212,104 @@ public class FabricWrapper {
         }
     }
 
+    /**
+     * Opens the uncompressed launch archive for the class path of {@code index}, building it first if it is missing or outdated.
+     *
+     * @return the archive, {@code null} if it can't be used and classes have to be read from the jars
+     */
+    @SuppressWarnings("try")
+    private static LaunchArchive openLaunchArchive(Path file, ClassPathIndex index) {
+        try (BootReport.Scope ignored = BootReport.begin("launchArchive")) {
+            LaunchArchive archive = LaunchArchive.open(file, index.getKey());
+            BootReport.cache("launchArchive", archive != null);
+
+            if (archive == null) {
+                Path[] jars = new Path[index.size()];
+
+                for (int i = 0; i < jars.length; i++) {
+                    jars[i] = index.getPath(i);
+                }
+
+                ServerInstaller.makeLaunchArchive(file, jars, index.getKey(), InstallerProgress.CONSOLE);
+                archive = LaunchArchive.open(file, index.getKey());
+            }
+
+            return archive;
+        } catch (IOException e) {
+            LOGGER.warn("Can't use the launch archive, loading classes from the library jars instead: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean verify(Path dir, InstallLock lock) throws IOException {
+        if (lock == null) {
+            LOGGER.error("No install lock found in {}, there is nothing to verify against.", dir);
+            return false;
+        }
+
+        LOGGER.info("Verifying Minecraft {} with Fabric Loader {}.", lock.gameVersion, lock.loaderVersion);
+        IntegrityVerifier.Report report = new IntegrityVerifier(dir, lock).verify();
+
+        for (IntegrityVerifier.Problem problem : report.problems) {
+            LOGGER.error("{} ({}): {}", problem.artifact.name, problem.artifact.path, problem.description);
+        }
+
+        for (Path stale : report.stale) {
+            LOGGER.warn("Stale file not used by this install: {}", dir.relativize(stale));
+        }
+
+        LOGGER.info("Checked {} files, {} corrupt or missing, {} stale.", report.checked, report.problems.size(), report.stale.size());
+        return report.isValid();
+    }
+
+    @SuppressWarnings("try")
+    private static InstallLock install(Path dir, String requestedVersion, boolean explicitVersion) throws IOException {
+        String resolvedVersion;
+        LoaderVersion latestLoader;
+
+        try (BootReport.Scope ignored = BootReport.begin("meta")) {
+            // Start every meta request that doesn't depend on another one right away, so the install only waits for the slowest of them
+            LOADER_META.loadAsync();
+            LauncherMeta.getLauncherMetaAsync();
+            if (!explicitVersion && requestedVersion.contains("/")) {
+                GAME_VERSION_META.loadAsync();
+            }
+
+            try (BootReport.Scope resolving = BootReport.begin("resolveVersion")) {
+                resolvedVersion = explicitVersion ? requestedVersion : parseVersion(requestedVersion);
+            }
+
+            LauncherMeta.getLauncherMetaAsync().thenAccept(launcherMeta -> {
+                LauncherMeta.Version version = launcherMeta.getVersion(resolvedVersion);
+                if (version != null) {
+                    version.getVersionMetaAsync();
+                }
+            });
+
+            InstallerProgress.CONSOLE.updateProgress(Utils.BUNDLE.getString("progress.start.loader"));
+            try {
+                LOADER_META.load();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to load Fabric Loader meta.", e);
+            }
+            latestLoader = new LoaderVersion(LOADER_META.getLatestVersion(false).getVersion());
+            MetaCache.prefetch(ServerInstaller.getServerJsonUrl(latestLoader, resolvedVersion));
+        }
+
+        try {
+            Path serverJar = dir.resolve("server.jar");
+            InstallLock lock = ServerInstaller.install(dir, latestLoader, resolvedVersion, InstallerProgress.CONSOLE, null, serverJar)
+                    .withRequestedVersion(requestedVersion);
+            loadUrls.add(serverJar.toUri().toURL());
+            InstallerProgress.CONSOLE.updateProgress(Utils.BUNDLE.getString("progress.done.loader"));
+            InstallerProgress.CONSOLE.updateProgress(Utils.BUNDLE.getString("progress.done.server"));
+            lock.write(dir);
+            return lock;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to install Fabric Loader and Minecraft Server", e);
+        }
+    }
+
     private static void loadProperties() {
         Map<String, String> defaultProperties = new HashMap<>();
         defaultProperties.put("gameVersion", "latest/release");
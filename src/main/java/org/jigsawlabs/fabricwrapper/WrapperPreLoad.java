@@ -27,10 +27,29 @@ import java.lang.reflect.Field;
 import java.net.URL;
 import java.net.URLClassLoader;
 
+/**
+ * Entry point of the wrapper jar.
+ *
+ * <p>The wrapper runs on the application class loader and replaces the system class loader once, when it knows the
+ * full server class path. The old bootstrap, which first moved the wrapper itself to its own loader and collected the
+ * previous one on each of the two swaps, is still available with {@value #LEGACY_BOOTSTRAP_PROPERTY}.</p>
+ */
 public class WrapperPreLoad {
+    public static final String LEGACY_BOOTSTRAP_PROPERTY = "fabric.wrapper.legacyBootstrap";
+
     private static final ClassLoader parentLoader = WrapperPreLoad.class.getClassLoader();
 
+    /**
+     * Makes {@code newLoader} the system class loader. The caller also sets it as the context class loader.
+     */
     public static void replaceLoader(URLClassLoader newLoader) {
+        replaceLoader(newLoader, Boolean.getBoolean(LEGACY_BOOTSTRAP_PROPERTY));
+    }
+
+    /**
+     * @param collect also run the old loader's finalizer and a full collection afterwards, as the legacy bootstrap did
+     */
+    static void replaceLoader(ClassLoader newLoader, boolean collect) {
         try {
             Field theUnsafe = Unsafe.class.getDeclaredField("theUnsafe");
             theUnsafe.setAccessible(true);
@@ -38,15 +57,25 @@ public class WrapperPreLoad {
             Class<MethodHandles.Lookup> lookupClass = MethodHandles.Lookup.class;
             MethodHandles.Lookup impl_lookup = (MethodHandles.Lookup) u.getObject(lookupClass, u.staticFieldOffset(lookupClass.getDeclaredField("IMPL_LOOKUP")));
             MethodHandle setter = impl_lookup.findStaticSetter(ClassLoader.class, "scl", ClassLoader.class);
-            impl_lookup.findVirtual(ClassLoader.getSystemClassLoader().getClass(), "finalize", MethodType.methodType(void.class)).invoke(ClassLoader.getSystemClassLoader());
+            if (collect) {
+                impl_lookup.findVirtual(ClassLoader.getSystemClassLoader().getClass(), "finalize", MethodType.methodType(void.class)).invoke(ClassLoader.getSystemClassLoader());
+            }
             setter.invokeWithArguments(newLoader);
-            System.gc();
+            if (collect) {
+                System.gc();
+            }
         } catch (Throwable e) {
             throw new RuntimeException("Failed to replace system ClassLoader", e);
         }
     }
 
     public static void main(String[] args) {
+        if (!Boolean.getBoolean(LEGACY_BOOTSTRAP_PROPERTY)) {
+            // a loader for the wrapper jar alone would be replaced again as soon as the libraries are known
+            launch("org.jigsawlabs.fabricwrapper.FabricWrapper", parentLoader, args);
+            return;
+        }
+
         try {
             URLClassLoader newClassLoader = new InjectingURLClassLoader(new URL[] { WrapperPreLoad.class.getProtectionDomain().getCodeSource().getLocation() }, parentLoader);
             Thread.currentThread().setContextClassLoader(newClassLoader);
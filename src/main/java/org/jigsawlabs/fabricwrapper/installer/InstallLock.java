@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer;
+
+import mjson.Json;
+import org.jigsawlabs.fabricwrapper.installer.util.Utils;
+import org.jigsawlabs.fabricwrapper.installer.util.VerificationRecord;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records the result of a successful install, so the next boot can skip resolving versions and downloading files.
+ *
+ * <p>The lock is only trusted while the requested game version is unchanged and every recorded file
+ * is still on disk with the same size and hash. Deleting the file forces a fresh install.</p>
+ */
+public final class InstallLock {
+	public static final String FILE_NAME = "install-lock.json";
+
+	public final String requestedVersion;
+	public final String gameVersion;
+	public final String loaderVersion;
+	public final String mainClass;
+	public final String jarMainClass;
+	public final List<Artifact> libraries;
+	public final Artifact serverJar;
+
+	public InstallLock(String requestedVersion, String gameVersion, String loaderVersion, String mainClass, String jarMainClass, List<Artifact> libraries, Artifact serverJar) {
+		this.requestedVersion = requestedVersion;
+		this.gameVersion = gameVersion;
+		this.loaderVersion = loaderVersion;
+		this.mainClass = mainClass;
+		this.jarMainClass = jarMainClass;
+		this.libraries = Collections.unmodifiableList(libraries);
+		this.serverJar = serverJar;
+	}
+
+	public static Path getPath(Path dir) {
+		return dir.resolve(".fabric-installer").resolve(FILE_NAME);
+	}
+
+	/**
+	 * @return the lock stored in {@code dir}, or {@code null} if there is none or it can't be read
+	 */
+	public static InstallLock read(Path dir) {
+		Path file = getPath(dir);
+
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+
+		try {
+			Json json = Json.read(Utils.readString(file));
+			List<Artifact> libraries = new ArrayList<>();
+
+			for (Json library : json.at("libraries").asJsonList()) {
+				libraries.add(new Artifact(library));
+			}
+
+			return new InstallLock(json.at("requestedVersion").asString(), json.at("gameVersion").asString(), json.at("loaderVersion").asString(),
+					json.at("mainClass").asString(), json.at("jarMainClass").asString(), libraries, json.has("serverJar") ? new Artifact(json.at("serverJar")) : null);
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	public void write(Path dir) throws IOException {
+		Json libraryArray = Json.array();
+
+		for (Artifact library : libraries) {
+			libraryArray.add(library.toJson());
+		}
+
+		Json json = Json.object()
+				.set("requestedVersion", requestedVersion)
+				.set("gameVersion", gameVersion)
+				.set("loaderVersion", loaderVersion)
+				.set("mainClass", mainClass)
+				.set("jarMainClass", jarMainClass)
+				.set("libraries", libraryArray);
+
+		if (serverJar != null) {
+			json.set("serverJar", serverJar.toJson());
+		}
+
+		Path file = getPath(dir);
+		Files.createDirectories(file.getParent());
+		Path tmp = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+		Utils.writeToFile(tmp, json.toString());
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Checks that the lock was made for {@code requestedVersion} and that every recorded file is unchanged.
+	 */
+	public boolean matches(Path dir, String requestedVersion) throws IOException {
+		if (!this.requestedVersion.equals(requestedVersion)) {
+			return false;
+		}
+
+		for (Artifact library : libraries) {
+			if (!library.matches(dir)) return false;
+		}
+
+		return serverJar == null || serverJar.matches(dir);
+	}
+
+	public InstallLock withRequestedVersion(String requestedVersion) {
+		return new InstallLock(requestedVersion, gameVersion, loaderVersion, mainClass, jarMainClass, libraries, serverJar);
+	}
+
+	public List<URL> getLibraryUrls(Path dir) throws IOException {
+		List<URL> urls = new ArrayList<>(libraries.size());
+
+		for (Artifact library : libraries) {
+			urls.add(library.resolve(dir).toUri().toURL());
+		}
+
+		return urls;
+	}
+
+	public static final class Artifact {
+		public final String name;
+		public final String path;
+		public final String sha1;
+		public final long size;
+
+		public Artifact(String name, String path, String sha1, long size) {
+			this.name = name;
+			this.path = path;
+			this.sha1 = sha1;
+			this.size = size;
+		}
+
+		private Artifact(Json json) {
+			this(json.at("name").asString(), json.at("path").asString(), json.at("sha1").asString(), json.at("size").asLong());
+		}
+
+		/**
+		 * Creates an artifact entry for a file in {@code dir}, looking up its hash if {@code sha1} is not known yet.
+		 */
+		public static Artifact of(Path dir, String name, Path file, String sha1) throws IOException {
+			String path = dir.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+			return new Artifact(name, path, sha1 != null ? sha1 : VerificationRecord.getSha1(file), Files.size(file));
+		}
+
+		public Path resolve(Path dir) {
+			return dir.resolve(path);
+		}
+
+		public boolean matches(Path dir) throws IOException {
+			return VerificationRecord.matches(resolve(dir), sha1, size);
+		}
+
+		private Json toJson() {
+			return Json.object()
+					.set("name", name)
+					.set("path", path)
+					.set("sha1", sha1)
+					.set("size", size);
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer;
+
+import org.jigsawlabs.fabricwrapper.installer.util.FlightRecorderEvents;
+import org.jigsawlabs.fabricwrapper.installer.util.HashVerificationEvent;
+import org.jigsawlabs.fabricwrapper.installer.util.Utils;
+import org.jigsawlabs.fabricwrapper.installer.util.VerificationRecord;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Hashes every artifact of an install in parallel and compares it with the {@link InstallLock}.
+ *
+ * <p>Unlike the checks done on a normal start, verification records are ignored and every file is read again,
+ * so it can be used to find files damaged on disk. Files in the libraries folder that the lock doesn't know about
+ * are reported as stale.</p>
+ */
+public final class IntegrityVerifier {
+	private final Path dir;
+	private final InstallLock lock;
+
+	public IntegrityVerifier(Path dir, InstallLock lock) {
+		this.dir = dir;
+		this.lock = lock;
+	}
+
+	public Report verify() throws IOException {
+		List<InstallLock.Artifact> artifacts = new ArrayList<>(lock.libraries);
+		if (lock.serverJar != null) artifacts.add(lock.serverJar);
+
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		Report report = new Report();
+
+		try {
+			List<Future<Problem>> results = new ArrayList<>(artifacts.size());
+
+			for (InstallLock.Artifact artifact : artifacts) {
+				results.add(pool.submit(() -> check(artifact)));
+			}
+
+			for (Future<Problem> result : results) {
+				Problem problem = result.get();
+				if (problem != null) report.problems.add(problem);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while verifying files");
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to verify files", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		report.checked = artifacts.size();
+		report.stale.addAll(findStaleLibraries());
+		return report;
+	}
+
+	private Problem check(InstallLock.Artifact artifact) throws IOException {
+		Path file = artifact.resolve(dir);
+
+		if (!Files.isRegularFile(file)) {
+			return new Problem(artifact, "missing");
+		}
+
+		HashVerificationEvent event = FlightRecorderEvents.ENABLED ? HashVerificationEvent.start() : null;
+		String sha1 = Utils.sha1String(file);
+		if (event != null) event.complete(file, Files.size(file), false);
+
+		if (!sha1.equalsIgnoreCase(artifact.sha1)) {
+			return new Problem(artifact, String.format("corrupt, expected sha1 %s but got %s", artifact.sha1, sha1));
+		}
+
+		VerificationRecord.record(file, sha1);
+		return null;
+	}
+
+	private List<Path> findStaleLibraries() throws IOException {
+		Path libsDir = dir.resolve(".fabric-installer").resolve("libraries");
+
+		if (!Files.isDirectory(libsDir)) {
+			return Collections.emptyList();
+		}
+
+		Set<Path> known = new HashSet<>();
+
+		for (InstallLock.Artifact library : lock.libraries) {
+			known.add(library.resolve(dir).normalize());
+		}
+
+		try (Stream<Path> files = Files.walk(libsDir)) {
+			return files.filter(path -> path.toString().endsWith(".jar") && Files.isRegularFile(path))
+					.filter(path -> !known.contains(path.normalize()))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	public static final class Report {
+		public final List<Problem> problems = new ArrayList<>();
+		public final List<Path> stale = new ArrayList<>();
+		public int checked;
+
+		public boolean isValid() {
+			return problems.isEmpty();
+		}
+	}
+
+	public static final class Problem {
+		public final InstallLock.Artifact artifact;
+		public final String description;
+
+		Problem(InstallLock.Artifact artifact, String description) {
+			this.artifact = artifact;
+			this.description = description;
+		}
+	}
+}
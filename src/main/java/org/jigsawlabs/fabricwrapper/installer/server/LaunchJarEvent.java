@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Flight Recorder event for building the launch jar or the uncompressed launch archive.
+ */
+@Name("org.jigsawlabs.fabricwrapper.LaunchJar")
+@Label("Launch Jar Assembly")
+@Category({"Fabric Wrapper", "Installer"})
+@Description("The libraries were merged into a launch jar or launch archive")
+@StackTrace(false)
+public class LaunchJarEvent extends Event {
+	@Label("File")
+	public String file;
+
+	@Label("Libraries")
+	public int libraries;
+
+	@Label("Size")
+	@DataAmount
+	public long size;
+
+	@Label("Uncompressed")
+	@Description("Whether this is the uncompressed launch archive")
+	public boolean uncompressed;
+
+	static LaunchJarEvent start() {
+		LaunchJarEvent event = new LaunchJarEvent();
+		event.begin();
+		return event;
+	}
+
+	void complete(Path file, int libraries, boolean uncompressed) throws IOException {
+		end();
+
+		if (shouldCommit()) {
+			this.file = file.toString();
+			this.libraries = libraries;
+			this.size = Files.size(file);
+			this.uncompressed = uncompressed;
+			commit();
+		}
+	}
+}
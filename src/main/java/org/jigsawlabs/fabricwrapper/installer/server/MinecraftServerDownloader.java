@@ -16,15 +16,16 @@
 
 package org.jigsawlabs.fabricwrapper.installer.server;
 
+import org.jigsawlabs.fabricwrapper.installer.util.BootReport;
 import org.jigsawlabs.fabricwrapper.installer.util.LauncherMeta;
-import org.jigsawlabs.fabricwrapper.installer.util.Utils;
+import org.jigsawlabs.fabricwrapper.installer.util.SharedStore;
+import org.jigsawlabs.fabricwrapper.installer.util.VerificationRecord;
 import org.jigsawlabs.fabricwrapper.installer.util.VersionMeta;
 
 import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 
 public class MinecraftServerDownloader {
 	private final String gameVersion;
@@ -34,20 +35,24 @@ public class MinecraftServerDownloader {
 	}
 
 	public void downloadMinecraftServer(Path serverJar) throws IOException {
-		if (isServerJarValid(serverJar)) {
+		boolean valid = isServerJarValid(serverJar);
+		BootReport.cache("serverJar", valid);
+
+		if (valid) {
 			System.out.println("Existing server jar valid, not downloading");
 			return;
 		}
 
-		Path serverJarTmp = serverJar.resolveSibling(serverJar.getFileName().toString() + ".tmp");
-		Files.deleteIfExists(serverJar);
-		Utils.downloadFile(new URL(getServerDownload().url), serverJarTmp);
+		// a partial server.jar.tmp from an interrupted start is resumed
+		VersionMeta.Download download = getServerDownload();
 
-		if (!isServerJarValid(serverJarTmp)) {
-			throw new IOException("Failed to validate downloaded server jar");
+		try {
+			SharedStore.downloadFile(new URL(download.url), serverJar, download.sha1);
+		} catch (IOException e) {
+			throw new IOException("Failed to download a valid server jar", e);
 		}
 
-		Files.move(serverJarTmp, serverJar, StandardCopyOption.REPLACE_EXISTING);
+		VerificationRecord.record(serverJar, download.sha1);
 	}
 
 	private boolean isServerJarValid(Path serverJar) throws IOException {
@@ -55,7 +60,8 @@ public class MinecraftServerDownloader {
 			return false;
 		}
 
-		return Utils.sha1String(serverJar).equalsIgnoreCase(getServerDownload().sha1);
+		VersionMeta.Download download = getServerDownload();
+		return VerificationRecord.matches(serverJar, download.sha1, download.size);
 	}
 
 	private VersionMeta getVersionMeta() throws IOException {
@@ -68,7 +74,7 @@ public class MinecraftServerDownloader {
 		return version.getVersionMeta();
 	}
 
-	private VersionMeta.Download getServerDownload() throws IOException {
+	public VersionMeta.Download getServerDownload() throws IOException {
 		return getVersionMeta().downloads.get("server");
 	}
 }
@@ -20,15 +20,28 @@ import mjson.Json;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jigsawlabs.fabricwrapper.FabricWrapper;
+import org.jigsawlabs.fabricwrapper.installer.InstallLock;
 import org.jigsawlabs.fabricwrapper.installer.LoaderVersion;
+import org.jigsawlabs.fabricwrapper.installer.util.BootReport;
+import org.jigsawlabs.fabricwrapper.installer.util.DownloadQueue;
+import org.jigsawlabs.fabricwrapper.installer.util.FlightRecorderEvents;
 import org.jigsawlabs.fabricwrapper.installer.util.InstallerProgress;
 import org.jigsawlabs.fabricwrapper.installer.util.Library;
+import org.jigsawlabs.fabricwrapper.installer.util.MetaCache;
+import org.jigsawlabs.fabricwrapper.installer.util.ParallelEntryCompressor;
+import org.jigsawlabs.fabricwrapper.installer.util.RawZipFile;
+import org.jigsawlabs.fabricwrapper.installer.util.RawZipOutput;
+import org.jigsawlabs.fabricwrapper.installer.util.SharedStore;
 import org.jigsawlabs.fabricwrapper.installer.util.Reference;
 import org.jigsawlabs.fabricwrapper.installer.util.Utils;
+import org.jigsawlabs.fabricwrapper.installer.util.VerificationRecord;
+import org.jigsawlabs.fabricwrapper.jumploader.util.RequestUtils;
+import org.jigsawlabs.fabricwrapper.loader.launch.server.LaunchArchive;
 import org.jigsawlabs.fabricwrapper.loader.util.UrlConversionException;
 import org.jigsawlabs.fabricwrapper.loader.util.UrlUtil;
 
 import java.io.*;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -40,13 +53,14 @@ import java.util.jar.*;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 public class ServerInstaller {
     private static final String servicesDir = "META-INF/services/";
     private static final String manifestPath = "META-INF/MANIFEST.MF";
     public static final String DEFAULT_LAUNCH_JAR_NAME = "fabric-server-launch.jar";
+    private static final String FINGERPRINT_ATTRIBUTE = "Fabric-Wrapper-Fingerprint";
     private static final Pattern SIGNATURE_FILE_PATTERN = Pattern.compile("META-INF/[^/]+\\.(SF|DSA|RSA|EC)");
     private static final Logger LOGGER = LogManager.getLogger("FabricWrapper");
 
@@ -56,6 +70,25 @@ public class ServerInstaller {
     }
 
     public static void install(Path dir, LoaderVersion loaderVersion, String gameVersion, InstallerProgress progress, Path launchJar) throws IOException {
+        install(dir, loaderVersion, gameVersion, progress, launchJar, null);
+    }
+
+    /**
+     * @return the meta endpoint listing the server libraries for this loader and game version
+     */
+    public static URL getServerJsonUrl(LoaderVersion loaderVersion, String gameVersion) throws MalformedURLException {
+        return new URL(Reference.getMetaServerEndpoint(String.format("v2/versions/loader/%s/%s/server/json", gameVersion, loaderVersion.name)));
+    }
+
+    /**
+     * Installs the loader libraries and, when {@code serverJar} is not null, the vanilla server jar.
+     * All downloads run concurrently through a {@link DownloadQueue}.
+     * The launch jar is skipped when {@code launchJar} is null.
+     *
+     * @return the lock describing the installed files, its requested version is {@code gameVersion}
+     */
+    @SuppressWarnings("try")
+    public static InstallLock install(Path dir, LoaderVersion loaderVersion, String gameVersion, InstallerProgress progress, Path launchJar, Path serverJar) throws IOException {
         progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.installing.server")).format(new Object[]{String.format("%s(%s)", loaderVersion.name, gameVersion)}));
 
         Files.createDirectories(dir);
@@ -69,7 +102,11 @@ public class ServerInstaller {
         String mainClassMeta;
 
         if (loaderVersion.path == null) { // loader jar unavailable, grab everything from meta
-            Json json = Json.read(Utils.readTextFile(new URL(Reference.getMetaServerEndpoint(String.format("v2/versions/loader/%s/%s/server/json", gameVersion, loaderVersion.name)))));
+            Json json;
+
+            try (BootReport.Scope ignored = BootReport.begin("meta")) {
+                json = Json.read(MetaCache.readTextFile(getServerJsonUrl(loaderVersion, gameVersion)));
+            }
 
             for (Json libraryJson : json.at("libraries").asJsonList()) {
                 libraries.add(new Library(libraryJson));
@@ -100,30 +137,61 @@ public class ServerInstaller {
         String mainClassManifest = "net.fabricmc.loader.launch.server.FabricServerLauncher";
         List<Path> libraryFiles = new ArrayList<>();
 
-        for (Library library : libraries) {
-            Path libraryFile = libsDir.resolve(library.getFileName());
+        String[] serverJarHash = new String[1];
+        String[] libraryHashes = new String[libraries.size()];
+
+        try (DownloadQueue queue = new DownloadQueue(progress)) {
+            if (serverJar != null) {
+                queue.add("minecraft-server:" + gameVersion, () -> {
+                    try (BootReport.Scope ignored = BootReport.begin("serverJar")) {
+                        progress.updateProgress(Utils.BUNDLE.getString("progress.download.minecraft"));
+                        MinecraftServerDownloader downloader = new MinecraftServerDownloader(gameVersion);
+                        downloader.downloadMinecraftServer(serverJar);
+                        serverJarHash[0] = downloader.getServerDownload().sha1;
+                    }
+                });
+            }
+
+            for (int i = 0; i < libraries.size(); i++) {
+                Library library = libraries.get(i);
+                Path libraryFile = libsDir.resolve(library.getFileName());
+                int index = i;
+
+                if (library.inputPath == null) {
+                    queue.add(library.name, () -> {
+                        try (BootReport.Scope ignored = BootReport.begin("libraries")) {
+                            progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.download.library.entry")).format(new Object[]{library.name}));
+                            URL url = new URL(library.getURL());
+                            libraryHashes[index] = SharedStore.downloadFile(url, libraryFile, getExpectedSha1(url));
+                            VerificationRecord.record(libraryFile, libraryHashes[index]);
+                        }
+                    });
+                } else {
+                    Files.createDirectories(libraryFile.getParent());
+                    Files.copy(library.inputPath, libraryFile, StandardCopyOption.REPLACE_EXISTING);
+                }
 
-            if (library.inputPath == null) {
-                progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.download.library.entry")).format(new Object[]{library.name}));
-                Utils.downloadFile(new URL(library.getURL()), libraryFile);
-            } else {
-                Files.createDirectories(libraryFile.getParent());
-                Files.copy(library.inputPath, libraryFile, StandardCopyOption.REPLACE_EXISTING);
+                libraryFiles.add(libraryFile);
             }
 
-            libraryFiles.add(libraryFile);
+            queue.execute();
+        }
 
-            if (library.name.matches("net\\.fabricmc:fabric-loader:.*")) {
-                try (JarFile jarFile = new JarFile(libraryFile.toFile())) {
+        for (int i = 0; i < libraries.size(); i++) {
+            if (libraries.get(i).name.matches("net\\.fabricmc:fabric-loader:.*")) {
+                try (JarFile jarFile = new JarFile(libraryFiles.get(i).toFile())) {
                     Manifest manifest = jarFile.getManifest();
                     mainClassManifest = manifest.getMainAttributes().getValue("Main-Class");
                 }
             }
         }
 
-        progress.updateProgress(Utils.BUNDLE.getString("progress.generating.launch.jar"));
+        List<InstallLock.Artifact> libraryArtifacts = new ArrayList<>(libraries.size());
+
+        for (int i = 0; i < libraries.size(); i++) {
+            libraryArtifacts.add(InstallLock.Artifact.of(dir, libraries.get(i).name, libraryFiles.get(i), libraryHashes[i]));
+        }
 
-        makeLaunchJar(launchJar, mainClassMeta, mainClassManifest, libraryFiles, progress);
         FabricWrapper.loadUrls.addAll(libraryFiles.stream().map(v -> {
             try {
                 return UrlUtil.asUrl(v);
@@ -131,79 +199,265 @@ public class ServerInstaller {
                 throw new RuntimeException(e);
             }
         }).collect(Collectors.toList()));
+
+        InstallLock.Artifact serverArtifact = serverJar != null ? InstallLock.Artifact.of(dir, "minecraft-server:" + gameVersion, serverJar, serverJarHash[0]) : null;
+        InstallLock lock = new InstallLock(gameVersion, gameVersion, loaderVersion.name, mainClassMeta, mainClassManifest, libraryArtifacts, serverArtifact);
+
+        if (launchJar != null) {
+            exportLaunchJar(dir, lock, launchJar, progress);
+        }
+
+        return lock;
     }
 
-    private static void makeLaunchJar(Path file, String launchMainClass, String jarMainClass, List<Path> libraryFiles, InstallerProgress progress) throws IOException {
-        Files.deleteIfExists(file);
+    /**
+     * Reads the {@code .sha1} file Maven repositories publish next to each artifact.
+     *
+     * @return the expected hash, or {@code null} if the repository doesn't provide one
+     */
+    private static String getExpectedSha1(URL url) {
+        try {
+            String hash = RequestUtils.getSha1Hash(url).trim();
+            int end = hash.indexOf(' ');
+            hash = end < 0 ? hash : hash.substring(0, end);
+            return hash.isEmpty() ? null : hash;
+        } catch (IOException e) {
+            LOGGER.debug("No checksum available for {}: {}", url, e.toString());
+            return null;
+        }
+    }
 
-        try (ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(file))) {
+    /**
+     * Builds the standalone launch jar for an installed {@code lock}, unless the existing one was built from the same files.
+     * It is only needed to start the server without the wrapper, the wrapper itself loads the libraries directly.
+     */
+    public static void exportLaunchJar(Path dir, InstallLock lock, Path launchJar, InstallerProgress progress) throws IOException {
+        String fingerprint = getLaunchJarFingerprint(lock.mainClass, lock.jarMainClass, lock.libraries);
+        boolean upToDate = fingerprint.equals(readLaunchJarFingerprint(launchJar));
+        BootReport.cache("launchJar", upToDate);
+
+        if (upToDate) {
+            progress.updateProgress(Utils.BUNDLE.getString("progress.generating.launch.jar.skip"));
+        } else {
+            progress.updateProgress(Utils.BUNDLE.getString("progress.generating.launch.jar"));
+            List<Path> libraryFiles = lock.libraries.stream().map(library -> library.resolve(dir)).collect(Collectors.toList());
+            makeLaunchJar(launchJar, lock.mainClass, lock.jarMainClass, fingerprint, libraryFiles, progress);
+        }
+    }
+
+    /**
+     * Hashes everything the launch jar is built from, it is stored in the jar manifest to detect when a rebuild is needed.
+     */
+    private static String getLaunchJarFingerprint(String launchMainClass, String jarMainClass, List<InstallLock.Artifact> libraries) {
+        StringBuilder input = new StringBuilder();
+        input.append(launchMainClass).append('\n').append(jarMainClass).append('\n');
+
+        for (InstallLock.Artifact library : libraries) {
+            input.append(library.path).append('=').append(library.sha1).append('\n');
+        }
+
+        return Utils.sha1String(input.toString());
+    }
+
+    private static String readLaunchJarFingerprint(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (JarFile jarFile = new JarFile(file.toFile())) {
+            Manifest manifest = jarFile.getManifest();
+            return manifest != null ? manifest.getMainAttributes().getValue(FINGERPRINT_ATTRIBUTE) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static void makeLaunchJar(Path file, String launchMainClass, String jarMainClass, String fingerprint, List<Path> libraryFiles, InstallerProgress progress) throws IOException {
+        LaunchJarEvent event = FlightRecorderEvents.ENABLED ? LaunchJarEvent.start() : null;
+        Path tmpFile = file.resolveSibling(file.getFileName().toString() + ".tmp");
+        Files.deleteIfExists(tmpFile);
+
+        try (RawZipOutput zipOutput = new RawZipOutput(Files.newOutputStream(tmpFile));
+             ParallelEntryCompressor compressor = new ParallelEntryCompressor(zipOutput)) {
             Set<String> addedEntries = new HashSet<>();
 
             addedEntries.add(manifestPath);
-            zipOutputStream.putNextEntry(new ZipEntry(manifestPath));
 
             Manifest manifest = new Manifest();
             manifest.getMainAttributes().put(new Attributes.Name("Manifest-Version"), "1.0");
             manifest.getMainAttributes().put(new Attributes.Name("Main-Class"), jarMainClass);
-            manifest.write(zipOutputStream);
-
-            zipOutputStream.closeEntry();
+            manifest.getMainAttributes().put(new Attributes.Name(FINGERPRINT_ATTRIBUTE), fingerprint);
+            ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+            manifest.write(manifestBytes);
+            zipOutput.writeDeflated(manifestPath, manifestBytes.toByteArray());
 
             addedEntries.add("fabric-server-launch.properties");
-            zipOutputStream.putNextEntry(new ZipEntry("fabric-server-launch.properties"));
-            zipOutputStream.write(("launch.mainClass=" + launchMainClass + "\n").getBytes(StandardCharsets.UTF_8));
-            zipOutputStream.closeEntry();
+            zipOutput.writeDeflated("fabric-server-launch.properties", ("launch.mainClass=" + launchMainClass + "\n").getBytes(StandardCharsets.UTF_8));
 
             Map<String, Set<String>> services = new HashMap<>();
-            byte[] buffer = new byte[32768];
 
             for (Path f : libraryFiles) {
                 progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.generating.launch.jar.library")).format(new Object[]{f.getFileName().toString()}));
 
-                // read service definitions (merging them), copy other files
-                try (JarInputStream jis = new JarInputStream(Files.newInputStream(f))) {
-                    JarEntry entry;
+                RawZipFile zipFile;
+
+                try {
+                    zipFile = new RawZipFile(f);
+                } catch (ZipException e) {
+                    LOGGER.debug("Can't copy {} without recompressing: {}", f, e.getMessage());
+                    copyRecompressed(f, compressor, addedEntries, services);
+                    continue;
+                }
 
-                    while ((entry = jis.getNextJarEntry()) != null) {
+                // read service definitions (merging them), copy other files with their compressed data as-is
+                try (RawZipFile zip = zipFile) {
+                    for (RawZipFile.Entry entry : zip.getEntries()) {
                         if (entry.isDirectory()) continue;
 
-                        String name = entry.getName();
+                        if (isServiceDefinition(entry.name)) {
+                            parseServiceDefinition(entry.name, new ByteArrayInputStream(zip.read(entry)), services);
+                        } else if (shouldCopy(entry.name, addedEntries)) {
+                            zipOutput.copyRaw(zip, entry);
+                        }
+                    }
+                }
+            }
+
+            // write service definitions
+            for (Map.Entry<String, Set<String>> entry : services.entrySet()) {
+                ByteArrayOutputStream serviceBytes = new ByteArrayOutputStream();
+                writeServiceDefinition(entry.getValue(), serviceBytes);
+                compressor.add(entry.getKey(), serviceBytes.toByteArray());
+            }
 
-                        if (name.startsWith(servicesDir) && name.indexOf('/', servicesDir.length()) < 0) { // service definition file
-                            parseServiceDefinition(name, jis, services);
-                        } else if (SIGNATURE_FILE_PATTERN.matcher(name).matches()) {
-                            // signature file, ignore
-                        } else if (!addedEntries.add(name)) {
-                            System.out.printf("duplicate file: %s%n", name);
-                        } else {
-                            JarEntry newEntry = new JarEntry(name);
-                            zipOutputStream.putNextEntry(newEntry);
+            compressor.flush();
+        }
+
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+        if (event != null) event.complete(file, libraryFiles.size(), false);
+    }
 
-                            int r;
+    /**
+     * Builds a {@link LaunchArchive} with the uncompressed content of every jar in {@code jars}, in class path order.
+     * {@code null} entries are not jars and are skipped, classes on them are still found through the class path.
+     */
+    public static void makeLaunchArchive(Path file, Path[] jars, String key, InstallerProgress progress) throws IOException {
+        progress.updateProgress(Utils.BUNDLE.getString("progress.generating.launch.archive"));
+        LaunchJarEvent event = FlightRecorderEvents.ENABLED ? LaunchJarEvent.start() : null;
+        int libraries = 0;
 
-                            while ((r = jis.read(buffer, 0, buffer.length)) >= 0) {
-                                zipOutputStream.write(buffer, 0, r);
-                            }
+        try (LaunchArchive.Writer writer = new LaunchArchive.Writer(file, jars.length)) {
+            for (int i = 0; i < jars.length; i++) {
+                if (jars[i] == null) continue;
+
+                libraries++;
+
+                progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.generating.launch.archive.library")).format(new Object[]{jars[i].getFileName().toString()}));
+
+                RawZipFile zipFile;
+
+                try {
+                    zipFile = new RawZipFile(jars[i]);
+                } catch (ZipException e) {
+                    LOGGER.debug("Can't read {} directly, streaming it: {}", jars[i], e.getMessage());
+                    addStreamed(jars[i], i, writer);
+                    continue;
+                }
 
-                            zipOutputStream.closeEntry();
+                try (RawZipFile zip = zipFile) {
+                    // the manifest decides whether versioned entries are used, it has to be known first
+                    for (RawZipFile.Entry entry : zip.getEntries()) {
+                        if (entry.name.equalsIgnoreCase(manifestPath)) {
+                            writer.addManifest(i, zip.read(entry));
                         }
                     }
+
+                    for (RawZipFile.Entry entry : zip.getEntries()) {
+                        if (entry.isDirectory()) continue;
+
+                        byte[] data = zip.read(entry);
+                        writer.add(i, entry.name, data, data.length);
+                    }
                 }
             }
 
-            // write service definitions
-            for (Map.Entry<String, Set<String>> entry : services.entrySet()) {
-                JarEntry newEntry = new JarEntry(entry.getKey());
-                zipOutputStream.putNextEntry(newEntry);
+            writer.finish(key);
+        }
+
+        if (event != null) event.complete(file, libraries, true);
+    }
 
-                writeServiceDefinition(entry.getValue(), zipOutputStream);
+    private static void addStreamed(Path f, int jar, LaunchArchive.Writer writer) throws IOException {
+        try (JarInputStream jis = new JarInputStream(Files.newInputStream(f))) {
+            Manifest manifest = jis.getManifest();
 
-                zipOutputStream.closeEntry();
+            if (manifest != null) {
+                ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+                manifest.write(manifestBytes);
+                writer.addManifest(jar, manifestBytes.toByteArray());
+                writer.add(jar, manifestPath, manifestBytes.toByteArray(), manifestBytes.size());
+            }
+
+            JarEntry entry;
+
+            while ((entry = jis.getNextJarEntry()) != null) {
+                if (entry.isDirectory()) continue;
+
+                byte[] data = jis.readAllBytes();
+                writer.add(jar, entry.getName(), data, data.length);
             }
         }
     }
 
-    private static void parseServiceDefinition(String name, InputStream rawIs, Map<String, Set<String>> services) throws IOException {
+    /**
+     * Fallback for jars {@link RawZipFile} can't read, every entry is inflated and deflated again on the compressor's pool.
+     */
+    private static void copyRecompressed(Path f, ParallelEntryCompressor compressor, Set<String> addedEntries, Map<String, Set<String>> services) throws IOException {
+        try (JarInputStream jis = new JarInputStream(Files.newInputStream(f))) {
+            JarEntry entry;
+            byte[] buffer = new byte[32768];
+
+            while ((entry = jis.getNextJarEntry()) != null) {
+                if (entry.isDirectory()) continue;
+
+                String name = entry.getName();
+
+                if (isServiceDefinition(name)) {
+                    parseServiceDefinition(name, jis, services);
+                } else if (shouldCopy(name, addedEntries)) {
+                    ByteArrayOutputStream data = new ByteArrayOutputStream();
+                    int r;
+
+                    while ((r = jis.read(buffer, 0, buffer.length)) >= 0) {
+                        data.write(buffer, 0, r);
+                    }
+
+                    compressor.add(name, data.toByteArray());
+                }
+            }
+        }
+
+        // keep raw copies of the following libraries after the entries of this one
+        compressor.flush();
+    }
+
+    private static boolean isServiceDefinition(String name) {
+        return name.startsWith(servicesDir) && name.indexOf('/', servicesDir.length()) < 0;
+    }
+
+    private static boolean shouldCopy(String name, Set<String> addedEntries) {
+        if (name.equalsIgnoreCase(manifestPath) || SIGNATURE_FILE_PATTERN.matcher(name).matches()) {
+            // library manifest or signature file, ignore
+            return false;
+        } else if (!addedEntries.add(name)) {
+            System.out.printf("duplicate file: %s%n", name);
+            return false;
+        }
+
+        return true;
+    }
+
+    static void parseServiceDefinition(String name, InputStream rawIs, Map<String, Set<String>> services) throws IOException {
         Collection<String> out = null;
         BufferedReader reader = new BufferedReader(new InputStreamReader(rawIs, StandardCharsets.UTF_8));
         String line;
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+import com.google.gson.stream.JsonWriter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects where the time of a start goes, logged as one summary line and saved as {@value #FILE_NAME}.
+ *
+ * <p>A phase is timed from the first time it is begun to the last time it ends, on {@link System#nanoTime()}.
+ * Phases may run on several threads at once (downloads) or inside each other, so their durations don't add up to the
+ * total. Bytes received over HTTP and cache hits and misses are counted for the phase the current thread is in, or for
+ * the phase of the thread that started the boot when the current thread isn't in one.</p>
+ */
+public final class BootReport {
+	public static final String FILE_NAME = "boot-report.json";
+	private static final int FORMAT = 1;
+	private static final Logger LOGGER = LogManager.getLogger("FabricWrapper");
+
+	private static final Map<String, Phase> PHASES = new LinkedHashMap<>();
+	private static final Map<String, String> ATTRIBUTES = new LinkedHashMap<>();
+	private static final Phase OTHER = new Phase("other");
+	private static final ThreadLocal<Phase> CURRENT = new ThreadLocal<>();
+
+	private static volatile Thread bootThread;
+	private static volatile Phase bootPhase;
+	private static long start = System.nanoTime();
+	private static long jvmStartup;
+
+	private BootReport() { }
+
+	/**
+	 * Starts the boot on the current thread, everything is timed relative to this call.
+	 */
+	public static synchronized void start() {
+		start = System.nanoTime();
+		jvmStartup = ManagementFactory.getRuntimeMXBean().getUptime();
+		bootThread = Thread.currentThread();
+	}
+
+	/**
+	 * Adds a value identifying the start to the report, like the game version.
+	 */
+	public static synchronized void setAttribute(String name, String value) {
+		ATTRIBUTES.put(name, value);
+	}
+
+	/**
+	 * Enters {@code phase} on the current thread until the returned scope is closed.
+	 */
+	public static Scope begin(String phase) {
+		Phase entered;
+
+		synchronized (BootReport.class) {
+			entered = PHASES.computeIfAbsent(phase, Phase::new);
+		}
+
+		entered.begin();
+		return new Scope(entered, CURRENT.get());
+	}
+
+	/**
+	 * @return the phase counters of the current thread go to
+	 */
+	public static Phase current() {
+		Phase phase = CURRENT.get();
+
+		if (phase == null) {
+			phase = bootPhase;
+		}
+
+		return phase != null ? phase : OTHER;
+	}
+
+	/**
+	 * Counts a lookup in {@code cache} for the current phase.
+	 */
+	public static void cache(String cache, boolean hit) {
+		current().cache(cache, hit);
+	}
+
+	/**
+	 * Logs the summary and writes the report to {@code file}, failing to write it only logs a warning.
+	 */
+	public static void finish(Path file) {
+		long total = System.nanoTime() - start;
+		List<Phase> phases;
+		Map<String, String> attributes;
+
+		synchronized (BootReport.class) {
+			phases = new ArrayList<>(PHASES.values());
+			attributes = new LinkedHashMap<>(ATTRIBUTES);
+		}
+
+		if (!OTHER.isEmpty()) {
+			phases.add(OTHER);
+		}
+
+		StringBuilder summary = new StringBuilder();
+		summary.append("Boot took ").append(TimeUnit.NANOSECONDS.toMillis(total)).append(" ms");
+
+		for (Phase phase : phases) {
+			summary.append(phase == phases.get(0) ? ": " : ", ").append(phase.describe());
+		}
+
+		LOGGER.info(summary.toString());
+
+		try {
+			Files.createDirectories(file.getParent());
+			Path tmp = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+
+			try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+				write(new JsonWriter(writer), total, phases, attributes);
+			}
+
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			LOGGER.warn("Failed to write the boot report to {}: {}", file, e.toString());
+		}
+	}
+
+	private static void write(JsonWriter json, long total, List<Phase> phases, Map<String, String> attributes) throws IOException {
+		json.setIndent("  ");
+		json.beginObject();
+		json.name("format").value(FORMAT);
+		json.name("time").value(Utils.ISO_8601.format(new Date()));
+		json.name("javaVersion").value(System.getProperty("java.version"));
+
+		for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+			json.name(attribute.getKey()).value(attribute.getValue());
+		}
+
+		json.name("jvmStartupMs").value(jvmStartup);
+		json.name("totalMs").value(toMillis(total));
+
+		long bytes = 0;
+		int hits = 0;
+		int misses = 0;
+		json.name("phases").beginArray();
+
+		for (Phase phase : phases) {
+			synchronized (phase) {
+				json.beginObject();
+				json.name("name").value(phase.name);
+
+				if (phase != OTHER) {
+					json.name("startMs").value(toMillis(phase.start - start));
+					json.name("durationMs").value(toMillis(phase.getDuration()));
+				}
+
+				json.name("bytes").value(phase.bytes);
+				json.name("caches").beginObject();
+
+				for (Map.Entry<String, int[]> cache : phase.caches.entrySet()) {
+					json.name(cache.getKey()).beginObject();
+					json.name("hits").value(cache.getValue()[0]);
+					json.name("misses").value(cache.getValue()[1]);
+					json.endObject();
+
+					hits += cache.getValue()[0];
+					misses += cache.getValue()[1];
+				}
+
+				json.endObject();
+				json.endObject();
+				bytes += phase.bytes;
+			}
+		}
+
+		json.endArray();
+		json.name("bytes").value(bytes);
+		json.name("cacheHits").value(hits);
+		json.name("cacheMisses").value(misses);
+		json.endObject();
+		json.flush();
+	}
+
+	private static double toMillis(long nanos) {
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+
+	/**
+	 * Timing and counters of one phase.
+	 */
+	public static final class Phase {
+		private final String name;
+		private final Map<String, int[]> caches = new TreeMap<>();
+		private long start = -1;
+		private long end;
+		private int running;
+		private long bytes;
+
+		private Phase(String name) {
+			this.name = name;
+		}
+
+		private synchronized void begin() {
+			if (start < 0) {
+				start = System.nanoTime();
+			}
+
+			running++;
+		}
+
+		private synchronized void end() {
+			end = System.nanoTime();
+			running--;
+		}
+
+		public synchronized void addBytes(long count) {
+			bytes += count;
+		}
+
+		public synchronized void cache(String cache, boolean hit) {
+			caches.computeIfAbsent(cache, c -> new int[2])[hit ? 0 : 1]++;
+		}
+
+		private synchronized boolean isEmpty() {
+			return bytes == 0 && caches.isEmpty();
+		}
+
+		private synchronized long getDuration() {
+			return (running > 0 ? System.nanoTime() : end) - start;
+		}
+
+		private synchronized String describe() {
+			StringBuilder description = new StringBuilder(name);
+
+			if (this != OTHER) {
+				description.append(' ').append(TimeUnit.NANOSECONDS.toMillis(getDuration())).append(" ms");
+			}
+
+			if (bytes > 0) {
+				description.append(String.format(" %.1f KiB", bytes / 1024.0));
+			}
+
+			int hits = 0;
+			int lookups = 0;
+
+			for (int[] counts : caches.values()) {
+				hits += counts[0];
+				lookups += counts[0] + counts[1];
+			}
+
+			if (lookups > 0) {
+				description.append(' ').append(hits).append('/').append(lookups).append(" cached");
+			}
+
+			return description.toString();
+		}
+	}
+
+	/**
+	 * The time the current thread spends in a phase, closing it returns the thread to the phase it was in before.
+	 */
+	public static final class Scope implements AutoCloseable {
+		private final Phase phase;
+		private final Phase previous;
+
+		private Scope(Phase phase, Phase previous) {
+			this.phase = phase;
+			this.previous = previous;
+			enter(phase);
+		}
+
+		@Override
+		public void close() {
+			phase.end();
+			enter(previous);
+		}
+
+		private static void enter(Phase phase) {
+			CURRENT.set(phase);
+
+			if (Thread.currentThread() == bootThread) {
+				bootPhase = phase;
+			}
+		}
+	}
+}
@@ -16,27 +16,89 @@
 
 package org.jigsawlabs.fabricwrapper.installer.util;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 public class CompletableHandler<T> {
 
-	private boolean complete;
+	/** Runs blocking meta requests in the background, so independent requests can be in flight at the same time. */
+	public static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new MetaThreadFactory());
 
-	private List<Consumer<T>> completeConsumers = new ArrayList<>();
+	private final CompletableFuture<T> future = new CompletableFuture<>();
 
 	public void onComplete(Consumer<T> completeConsumer) {
-		completeConsumers.add(completeConsumer);
+		future.thenAccept(completeConsumer);
 	}
 
 	protected void complete(T value){
-		complete = true;
-		completeConsumers.forEach(listConsumer -> listConsumer.accept(value));
+		future.complete(value);
+	}
+
+	protected void completeExceptionally(Throwable throwable) {
+		future.completeExceptionally(throwable);
 	}
 
 	public boolean isComplete() {
-		return complete;
+		return future.isDone() && !future.isCompletedExceptionally();
+	}
+
+	public CompletableFuture<T> getFuture() {
+		return future;
+	}
+
+	/**
+	 * Waits for {@code future}, rethrowing an {@link IOException} it failed with as-is.
+	 */
+	public static <V> V await(CompletableFuture<V> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for meta data");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Starts {@code supplier} on {@link #EXECUTOR}.
+	 */
+	public static <V> CompletableFuture<V> supplyAsync(IOSupplier<V> supplier) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return supplier.get();
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}, EXECUTOR);
+	}
+
+	@FunctionalInterface
+	public interface IOSupplier<V> {
+		V get() throws IOException;
+	}
+
+	private static class MetaThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "FabricWrapper Meta #" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
 	}
 
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Frequency;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.net.URL;
+
+/**
+ * Flight Recorder event for a download or a meta document, including requests a cache answered without downloading.
+ *
+ * <p>Like every event of the wrapper it is only filled in when {@link #shouldCommit()} is true, so it costs next to
+ * nothing while no recording is running. It must only be created when {@link FlightRecorderEvents#ENABLED} is true.</p>
+ */
+@Name("org.jigsawlabs.fabricwrapper.Download")
+@Label("Download")
+@Category({"Fabric Wrapper", "Installer"})
+@Description("A file or meta document fetched by the installer")
+@StackTrace(false)
+public class DownloadEvent extends Event {
+	@Label("URL")
+	public String url;
+
+	@Label("Bytes")
+	@Description("Bytes received, zero when a cache answered")
+	@DataAmount
+	public long bytes;
+
+	@Label("Throughput")
+	@DataAmount
+	@Frequency
+	public long throughput;
+
+	@Label("Cache Hit")
+	@Description("Whether the content came from a local cache instead of the network")
+	public boolean cacheHit;
+
+	private transient long started;
+	private transient long received;
+
+	/**
+	 * Starts timing the download.
+	 */
+	public static DownloadEvent start() {
+		DownloadEvent event = new DownloadEvent();
+		event.started = System.nanoTime();
+		event.begin();
+		return event;
+	}
+
+	public void addBytes(long bytes) {
+		received += bytes;
+	}
+
+	public void complete(URL url, boolean cacheHit) {
+		end();
+
+		if (shouldCommit()) {
+			this.url = url.toString();
+			this.bytes = received;
+			this.throughput = received * 1_000_000_000L / Math.max(1, System.nanoTime() - started);
+			this.cacheHit = cacheHit;
+			commit();
+		}
+	}
+}
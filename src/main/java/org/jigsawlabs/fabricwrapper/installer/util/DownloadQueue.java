@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a batch of downloads on a bounded thread pool.
+ *
+ * <p>The amount of parallel downloads can be changed with the {@value #THREADS_PROPERTY} system property,
+ * setting it to {@code 1} restores the old one-by-one behaviour.
+ * Failures do not stop the other downloads, they are all collected and reported together by {@link #execute()}.</p>
+ */
+public class DownloadQueue implements Closeable {
+	public static final String THREADS_PROPERTY = "fabric.wrapper.downloadThreads";
+	private static final int DEFAULT_THREADS = 6;
+
+	private final InstallerProgress progress;
+	private final List<Entry> entries = new ArrayList<>();
+	private ExecutorService executor;
+
+	public DownloadQueue(InstallerProgress progress) {
+		this.progress = progress;
+	}
+
+	public static int getConcurrency() {
+		return Math.max(1, Integer.getInteger(THREADS_PROPERTY, DEFAULT_THREADS));
+	}
+
+	public void add(String name, Task task) {
+		entries.add(new Entry(name, task));
+	}
+
+	/**
+	 * Runs every queued task and waits for all of them to finish.
+	 *
+	 * @throws IOException if at least one of the tasks failed, every failure is attached as a suppressed exception
+	 */
+	public void execute() throws IOException {
+		if (entries.isEmpty()) return;
+
+		int total = entries.size();
+		AtomicInteger completed = new AtomicInteger();
+		List<Future<?>> futures = new ArrayList<>(total);
+		executor = Executors.newFixedThreadPool(Math.min(getConcurrency(), total), new DownloadThreadFactory());
+
+		for (Entry entry : entries) {
+			futures.add(executor.submit(() -> {
+				entry.task.run();
+				progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.download.progress")).format(new Object[]{completed.incrementAndGet(), total}));
+				return null;
+			}));
+		}
+
+		List<String> failed = new ArrayList<>();
+		List<Throwable> causes = new ArrayList<>();
+
+		for (int i = 0; i < total; i++) {
+			try {
+				futures.get(i).get();
+			} catch (ExecutionException e) {
+				failed.add(entries.get(i).name);
+				causes.add(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				executor.shutdownNow();
+				throw new InterruptedIOException("Interrupted while waiting for downloads");
+			}
+		}
+
+		entries.clear();
+
+		if (!failed.isEmpty()) {
+			IOException exception = new IOException(String.format("Failed to download %d of %d files: %s", failed.size(), total, String.join(", ", failed)));
+			causes.forEach(exception::addSuppressed);
+			throw exception;
+		}
+	}
+
+	@Override
+	public void close() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	@FunctionalInterface
+	public interface Task {
+		void run() throws IOException;
+	}
+
+	private static class Entry {
+		final String name;
+		final Task task;
+
+		Entry(String name, Task task) {
+			this.name = name;
+			this.task = task;
+		}
+	}
+
+	private static class DownloadThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "FabricWrapper Download #" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+/**
+ * Guards the Flight Recorder events of the wrapper. Runtimes without the {@code jdk.jfr} module (jlinked images, OpenJ9
+ * builds without JFR) can't load a class extending {@code jdk.jfr.Event}, so events are only created when
+ * {@link #ENABLED} is true and are {@code null} otherwise.
+ */
+public final class FlightRecorderEvents {
+	public static final boolean ENABLED = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+	private FlightRecorderEvents() {
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.nio.file.Path;
+
+/**
+ * Flight Recorder event for checking the hash of an installed file, see {@link DownloadEvent} for the cost.
+ */
+@Name("org.jigsawlabs.fabricwrapper.HashVerification")
+@Label("Hash Verification")
+@Category({"Fabric Wrapper", "Installer"})
+@Description("The SHA-1 of an installed file was checked")
+@StackTrace(false)
+public class HashVerificationEvent extends Event {
+	@Label("File")
+	public String file;
+
+	@Label("Size")
+	@DataAmount
+	public long size;
+
+	@Label("Record Used")
+	@Description("Whether the hash was taken from the verification record instead of reading the file")
+	public boolean recordUsed;
+
+	public static HashVerificationEvent start() {
+		HashVerificationEvent event = new HashVerificationEvent();
+		event.begin();
+		return event;
+	}
+
+	public void complete(Path file, long size, boolean recordUsed) {
+		end();
+
+		if (shouldCommit()) {
+			this.file = file.toString();
+			this.size = size;
+			this.recordUsed = recordUsed;
+			commit();
+		}
+	}
+}
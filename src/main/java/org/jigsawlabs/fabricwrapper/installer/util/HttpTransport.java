@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The single HTTP client every meta request and download goes through.
+ *
+ * <p>Sharing one {@link HttpClient} keeps connections alive between requests and lets requests to the same host
+ * be multiplexed over HTTP/2, so each file doesn't pay for its own TLS handshake. Text requests ask for gzip.</p>
+ */
+public final class HttpTransport {
+	public static final String USER_AGENT = "FabricWrapper";
+
+	private static final HttpClient CLIENT = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_2)
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.connectTimeout(Duration.ofSeconds(30))
+			.build();
+	private static final LatencyTracker LATENCY = new LatencyTracker();
+
+	private HttpTransport() { }
+
+	public static boolean isHttp(URL url) {
+		return url.getProtocol().equals("http") || url.getProtocol().equals("https");
+	}
+
+	public static HttpRequest.Builder request(URL url) throws IOException {
+		try {
+			return HttpRequest.newBuilder(url.toURI()).header("User-Agent", USER_AGENT);
+		} catch (URISyntaxException e) {
+			throw new IOException("Invalid URL " + url, e);
+		}
+	}
+
+	/**
+	 * Sends {@code request} and returns the response with its body still unread, the caller must close it.
+	 *
+	 * <p>When mirrors are configured for the url (see {@link Reference#getMirrors(String)}) and the server hasn't
+	 * answered within its {@link LatencyTracker hedge delay}, the same request is also sent to the next mirror and
+	 * whichever answers first is used. A failed or error response moves on to the next mirror right away.</p>
+	 */
+	public static HttpResponse<InputStream> send(HttpRequest request) throws IOException {
+		List<String> mirrors = Reference.getMirrors(request.uri().toString());
+
+		try {
+			if (mirrors.size() == 1) {
+				long start = System.nanoTime();
+				HttpResponse<InputStream> response = CLIENT.send(request, countingBodyHandler());
+				LATENCY.record(request.uri().getHost(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+				return response;
+			}
+
+			return sendHedged(request, mirrors);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while requesting " + request.uri());
+		}
+	}
+
+	private static HttpResponse<InputStream> sendHedged(HttpRequest request, List<String> mirrors) throws IOException, InterruptedException {
+		BlockingQueue<Attempt> finished = new LinkedBlockingQueue<>();
+		List<CompletableFuture<HttpResponse<InputStream>>> attempts = new ArrayList<>();
+		Attempt errorResponse = null;
+		IOException failure = null;
+		int done = 0;
+
+		try {
+			while (true) {
+				if (attempts.size() == done) {
+					if (attempts.size() == mirrors.size()) {
+						break;
+					}
+
+					attempts.add(sendAsync(copy(request, mirrors.get(attempts.size())), finished));
+				}
+
+				Attempt attempt;
+
+				if (attempts.size() < mirrors.size()) {
+					String host = URI.create(mirrors.get(attempts.size() - 1)).getHost();
+					attempt = finished.poll(LATENCY.getHedgeDelay(host), TimeUnit.MILLISECONDS);
+
+					if (attempt == null) {
+						attempts.add(sendAsync(copy(request, mirrors.get(attempts.size())), finished));
+						continue;
+					}
+				} else {
+					attempt = finished.take();
+				}
+
+				done++;
+
+				if (attempt.response != null && attempt.response.statusCode() < 400) {
+					attempts.remove(attempt.future);
+					return attempt.response;
+				}
+
+				if (attempt.response != null) {
+					if (errorResponse != null) {
+						errorResponse.response.body().close();
+					}
+
+					errorResponse = attempt;
+				} else if (failure == null) {
+					failure = attempt.failure;
+				} else {
+					failure.addSuppressed(attempt.failure);
+				}
+			}
+
+			if (errorResponse != null) {
+				attempts.remove(errorResponse.future);
+				return errorResponse.response;
+			}
+
+			throw failure;
+		} finally {
+			// responses arriving after the winner are closed to give their connections back
+			for (CompletableFuture<HttpResponse<InputStream>> attempt : attempts) {
+				attempt.thenAccept(response -> closeQuietly(response.body()));
+			}
+		}
+	}
+
+	private static CompletableFuture<HttpResponse<InputStream>> sendAsync(HttpRequest request, BlockingQueue<Attempt> finished) {
+		long start = System.nanoTime();
+		CompletableFuture<HttpResponse<InputStream>> future = CLIENT.sendAsync(request, countingBodyHandler());
+
+		future.whenComplete((response, throwable) -> {
+			if (response != null) {
+				LATENCY.record(request.uri().getHost(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			}
+
+			Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+			IOException failure = cause == null ? null : cause instanceof IOException ? (IOException) cause : new IOException("Failed to request " + request.uri(), cause);
+			finished.add(new Attempt(future, response, failure));
+		});
+
+		return future;
+	}
+
+	/**
+	 * Streams the body like {@link HttpResponse.BodyHandlers#ofInputStream()}, counting the received bytes for the
+	 * {@link BootReport} phase of the thread sending the request.
+	 */
+	private static HttpResponse.BodyHandler<InputStream> countingBodyHandler() {
+		BootReport.Phase phase = BootReport.current();
+		return info -> new CountingSubscriber(HttpResponse.BodySubscribers.ofInputStream(), phase);
+	}
+
+	private static HttpRequest copy(HttpRequest request, String url) {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+				.method(request.method(), request.bodyPublisher().orElse(HttpRequest.BodyPublishers.noBody()));
+
+		request.headers().map().forEach((name, values) -> values.forEach(value -> builder.header(name, value)));
+		request.timeout().ifPresent(builder::timeout);
+		return builder.build();
+	}
+
+	private static void closeQuietly(InputStream stream) {
+		try {
+			stream.close();
+		} catch (IOException ignored) {
+			// nothing left to do with this response
+		}
+	}
+
+	/**
+	 * Fetches a text document, asking the server to compress it.
+	 */
+	public static String getText(URL url, String accept) throws IOException {
+		HttpResponse<InputStream> response = send(request(url)
+				.header("Accept", accept)
+				.header("Accept-Encoding", "gzip")
+				.build());
+
+		checkStatus(response);
+		return readText(response);
+	}
+
+	/**
+	 * Reads the body of {@code response} as UTF-8 text, undoing the gzip encoding if the server applied it.
+	 */
+	public static String readText(HttpResponse<InputStream> response) throws IOException {
+		try (InputStream is = openBody(response)) {
+			return Utils.readString(is);
+		}
+	}
+
+	public static InputStream openBody(HttpResponse<InputStream> response) throws IOException {
+		boolean gzip = response.headers().firstValue("Content-Encoding").map(v -> v.equalsIgnoreCase("gzip")).orElse(false);
+		return gzip ? new GZIPInputStream(response.body()) : response.body();
+	}
+
+	/**
+	 * Throws for anything other than a 2xx response, closing its body.
+	 */
+	public static void checkStatus(HttpResponse<InputStream> response) throws IOException {
+		int code = response.statusCode();
+
+		if (code >= 200 && code < 300) {
+			return;
+		}
+
+		response.body().close();
+
+		if (code == 404 || code == 410) {
+			throw new FileNotFoundException(response.uri().toString());
+		}
+
+		throw new IOException(String.format("Server returned HTTP %d for %s", code, response.uri()));
+	}
+
+	private static class Attempt {
+		final CompletableFuture<HttpResponse<InputStream>> future;
+		final HttpResponse<InputStream> response;
+		final IOException failure;
+
+		Attempt(CompletableFuture<HttpResponse<InputStream>> future, HttpResponse<InputStream> response, IOException failure) {
+			this.future = future;
+			this.response = response;
+			this.failure = failure;
+		}
+	}
+
+	private static class CountingSubscriber implements HttpResponse.BodySubscriber<InputStream> {
+		private final HttpResponse.BodySubscriber<InputStream> delegate;
+		private final BootReport.Phase phase;
+
+		CountingSubscriber(HttpResponse.BodySubscriber<InputStream> delegate, BootReport.Phase phase) {
+			this.delegate = delegate;
+			this.phase = phase;
+		}
+
+		@Override
+		public CompletionStage<InputStream> getBody() {
+			return delegate.getBody();
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			delegate.onSubscribe(subscription);
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> item) {
+			long bytes = 0;
+
+			for (ByteBuffer buffer : item) {
+				bytes += buffer.remaining();
+			}
+
+			phase.addBytes(bytes);
+			delegate.onNext(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			delegate.onError(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			delegate.onComplete();
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers how long each host took to answer recent requests, used to decide when a request is slow enough to hedge.
+ *
+ * <p>The hedge delay is the {@value #PERCENTILE_PROPERTY} percentile (default {@value #DEFAULT_PERCENTILE}) of the last
+ * {@value #WINDOW} response times of the host. Until enough samples exist {@value #DELAY_PROPERTY} milliseconds
+ * (default {@value #DEFAULT_DELAY}) are used instead.</p>
+ */
+public class LatencyTracker {
+	public static final String PERCENTILE_PROPERTY = "fabric.wrapper.hedgePercentile";
+	public static final String DELAY_PROPERTY = "fabric.wrapper.hedgeDelay";
+	private static final int DEFAULT_PERCENTILE = 95;
+	private static final long DEFAULT_DELAY = 1000;
+	private static final int WINDOW = 64;
+	private static final int MIN_SAMPLES = 8;
+
+	private final Map<String, Samples> hosts = new HashMap<>();
+
+	public synchronized void record(String host, long millis) {
+		hosts.computeIfAbsent(host, h -> new Samples()).add(millis);
+	}
+
+	/**
+	 * @return how long to wait for {@code host} before asking the next mirror, in milliseconds
+	 */
+	public synchronized long getHedgeDelay(String host) {
+		Samples samples = hosts.get(host);
+
+		if (samples == null || samples.count < MIN_SAMPLES) {
+			return Math.max(0, Long.getLong(DELAY_PROPERTY, DEFAULT_DELAY));
+		}
+
+		int percentile = Math.min(100, Math.max(1, Integer.getInteger(PERCENTILE_PROPERTY, DEFAULT_PERCENTILE)));
+		return samples.percentile(percentile);
+	}
+
+	private static class Samples {
+		private final long[] values = new long[WINDOW];
+		private int count;
+		private int next;
+
+		void add(long value) {
+			values[next] = value;
+			next = (next + 1) % WINDOW;
+			count = Math.min(count + 1, WINDOW);
+		}
+
+		long percentile(int percentile) {
+			long[] sorted = Arrays.copyOf(values, count);
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+			return sorted[Math.max(0, index)];
+		}
+	}
+}
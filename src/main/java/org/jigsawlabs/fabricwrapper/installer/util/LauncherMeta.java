@@ -16,68 +16,146 @@
 
 package org.jigsawlabs.fabricwrapper.installer.util;
 
+import com.google.gson.stream.JsonReader;
 import mjson.Json;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class LauncherMeta {
 
-	private static LauncherMeta launcherMeta = null;
+	private static CompletableFuture<LauncherMeta> launcherMeta = null;
 
 	public static LauncherMeta getLauncherMeta() throws IOException {
+		return CompletableHandler.await(getLauncherMetaAsync());
+	}
+
+	/**
+	 * Starts loading the version manifest in the background, later calls return the same future.
+	 */
+	public static synchronized CompletableFuture<LauncherMeta> getLauncherMetaAsync() {
 		if(launcherMeta == null){
-			launcherMeta = load();
+			launcherMeta = CompletableHandler.supplyAsync(LauncherMeta::load);
 		}
 		return launcherMeta;
 	}
 
 	private static LauncherMeta load() throws IOException {
 		URL url = new URL("https://launchermeta.mojang.com/mc/game/version_manifest_v2.json");
+		return parse(new StringReader(MetaCache.readTextFile(url)));
+	}
+
+	static LauncherMeta parse(Reader in) throws IOException {
+		List<Version> versions = new ArrayList<>();
+
+		// the manifest lists every release and snapshot, only the fields used here are read instead of building a tree
+		try (JsonReader reader = new JsonReader(in)) {
+			reader.beginObject();
+
+			while (reader.hasNext()) {
+				if (!reader.nextName().equals("versions")) {
+					reader.skipValue();
+					continue;
+				}
 
-		String str = Utils.readTextFile(url);
-		Json json = Json.read(str);
+				reader.beginArray();
 
-		List<Version> versions = json.at("versions").asJsonList()
-				.stream()
-				.map(Version::new)
-				.collect(Collectors.toList());
+				while (reader.hasNext()) {
+					versions.add(readVersion(reader));
+				}
+
+				reader.endArray();
+			}
+
+			reader.endObject();
+		}
 
 		return new LauncherMeta(versions);
 	}
 
+	private static Version readVersion(JsonReader reader) throws IOException {
+		String id = null;
+		String url = null;
+		String sha1 = null;
+
+		reader.beginObject();
+
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+				case "id":
+					id = reader.nextString();
+					break;
+				case "url":
+					url = reader.nextString();
+					break;
+				case "sha1":
+					sha1 = reader.nextString();
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+
+		reader.endObject();
+
+		if (id == null || url == null) {
+			throw new IOException("Version manifest entry without id or url");
+		}
+
+		return new Version(id, url, sha1);
+	}
+
 	public final List<Version> versions;
+	private final Map<String, Version> index;
 
 	public LauncherMeta(List<Version> versions) {
 		this.versions = versions;
+		this.index = new HashMap<>(versions.size() * 2);
+
+		for (Version version : versions) {
+			index.putIfAbsent(version.id, version);
+		}
 	}
 
 	public static class Version {
 		public final String id;
 		public final String url;
+		public final String sha1;
 
-		private VersionMeta versionMeta = null;
+		private CompletableFuture<VersionMeta> versionMeta = null;
 
-		public Version(Json json) {
-			this.id = json.at("id").asString();
-			this.url = json.at("url").asString();
+		public Version(String id, String url, String sha1) {
+			this.id = id;
+			this.url = url;
+			this.sha1 = sha1;
 		}
 
 		public VersionMeta getVersionMeta() throws IOException {
+			return CompletableHandler.await(getVersionMetaAsync());
+		}
+
+		public synchronized CompletableFuture<VersionMeta> getVersionMetaAsync() {
 			if(versionMeta == null){
-				URL url = new URL(this.url);
-				String str = Utils.readTextFile(url);
-				Json json = Json.read(str);
-				versionMeta = new VersionMeta(json);
+				versionMeta = CompletableHandler.supplyAsync(() -> {
+					URL url = new URL(this.url);
+					String str = MetaCache.readTextFile(url);
+					Json json = Json.read(str);
+					return new VersionMeta(json);
+				});
 			}
 			return versionMeta;
 		}
 	}
 
 	public Version getVersion(String version){
-		return versions.stream().filter(v -> v.id.equals(version)).findFirst().orElse(null);
+		return index.get(version);
 	}
 
 }
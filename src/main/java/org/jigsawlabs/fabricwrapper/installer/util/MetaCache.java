@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * On-disk cache for the JSON documents served by the Fabric and Mojang meta servers.
+ *
+ * <p>Each URL gets a body file and a small properties file holding the {@code ETag} and {@code Last-Modified}
+ * headers, which are sent back as a conditional request so an unchanged document only costs a {@code 304}.
+ * Entries younger than {@value #MAX_AGE_PROPERTY} seconds are served without touching the network,
+ * and a stale entry is still used when the server can't be reached.</p>
+ */
+public class MetaCache {
+	public static final String MAX_AGE_PROPERTY = "fabric.wrapper.metaMaxAge";
+	private static final long DEFAULT_MAX_AGE = 600;
+	private static final Logger LOGGER = LogManager.getLogger("FabricWrapper");
+
+	private static final Map<String, CompletableFuture<String>> PENDING = new ConcurrentHashMap<>();
+
+	private static Path cacheDir = Paths.get(".fabric-installer", "cache", "meta");
+
+	public static void setCacheDir(Path dir) {
+		cacheDir = dir;
+	}
+
+	public static String readTextFile(String url) throws IOException {
+		return readTextFile(new URL(url));
+	}
+
+	/**
+	 * Starts fetching {@code url} in the background, the next {@link #readTextFile(URL)} call for it waits for this request.
+	 */
+	public static CompletableFuture<String> prefetch(URL url) {
+		return PENDING.computeIfAbsent(url.toString(), key -> CompletableHandler.supplyAsync(() -> fetch(url)));
+	}
+
+	public static String readTextFile(URL url) throws IOException {
+		CompletableFuture<String> pending = PENDING.remove(url.toString());
+
+		if (pending != null) {
+			return CompletableHandler.await(pending);
+		}
+
+		return fetch(url);
+	}
+
+	private static String fetch(URL url) throws IOException {
+		if (!HttpTransport.isHttp(url)) {
+			return Utils.readTextFile(url);
+		}
+
+		String key = Utils.sha1String(url.toString());
+		Path bodyFile = cacheDir.resolve(key + ".json");
+		Path infoFile = cacheDir.resolve(key + ".properties");
+		Properties info = new Properties();
+
+		if (Files.isRegularFile(bodyFile) && Files.isRegularFile(infoFile)) {
+			try (InputStream is = Files.newInputStream(infoFile)) {
+				info.load(is);
+			} catch (IOException e) {
+				info.clear();
+			}
+		}
+
+		DownloadEvent event = FlightRecorderEvents.ENABLED ? DownloadEvent.start() : null;
+		boolean cached = !info.isEmpty();
+		long maxAge = Long.getLong(MAX_AGE_PROPERTY, DEFAULT_MAX_AGE) * 1000;
+
+		if (cached && System.currentTimeMillis() - Long.parseLong(info.getProperty("fetched", "0")) < maxAge) {
+			BootReport.cache("meta", true);
+			if (event != null) event.complete(url, true);
+			return Utils.readString(bodyFile);
+		}
+
+		try {
+			HttpRequest.Builder request = HttpTransport.request(url)
+					.header("Accept", "application/json")
+					.header("Accept-Encoding", "gzip");
+
+			if (cached) {
+				if (info.containsKey("etag")) request.header("If-None-Match", info.getProperty("etag"));
+				if (info.containsKey("lastModified")) request.header("If-Modified-Since", info.getProperty("lastModified"));
+			}
+
+			HttpResponse<InputStream> response = HttpTransport.send(request.build());
+
+			if (cached && response.statusCode() == 304) {
+				response.body().close();
+				info.setProperty("fetched", Long.toString(System.currentTimeMillis()));
+				store(infoFile, info);
+				BootReport.cache("meta", true);
+				if (event != null) event.complete(url, true);
+				return Utils.readString(bodyFile);
+			}
+
+			HttpTransport.checkStatus(response);
+			String body = HttpTransport.readText(response);
+
+			info.clear();
+			info.setProperty("url", url.toString());
+			info.setProperty("fetched", Long.toString(System.currentTimeMillis()));
+			putHeader(response, "ETag", "etag", info);
+			putHeader(response, "Last-Modified", "lastModified", info);
+
+			Files.createDirectories(cacheDir);
+			Path tmp = Files.createTempFile(cacheDir, key, ".tmp");
+			Utils.writeToFile(tmp, body);
+			Files.move(tmp, bodyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			store(infoFile, info);
+			BootReport.cache("meta", false);
+			if (event != null) {
+				event.addBytes(Files.size(bodyFile));
+				event.complete(url, false);
+			}
+
+			return body;
+		} catch (IOException e) {
+			if (!cached) throw e;
+
+			LOGGER.warn("Failed to refresh {}, using cached copy ({})", url, e.toString());
+			BootReport.cache("meta", true);
+			if (event != null) event.complete(url, true);
+			return Utils.readString(bodyFile);
+		}
+	}
+
+	private static void putHeader(HttpResponse<?> response, String header, String key, Properties info) {
+		response.headers().firstValue(header).ifPresent(value -> info.setProperty(key, value));
+	}
+
+	private static void store(Path file, Properties info) throws IOException {
+		Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+
+		try (OutputStream os = Files.newOutputStream(tmp)) {
+			info.store(os, null);
+		}
+
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
@@ -16,46 +16,103 @@
 
 package org.jigsawlabs.fabricwrapper.installer.util;
 
-import mjson.Json;
+import com.google.gson.stream.JsonReader;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class MetaHandler extends CompletableHandler<List<MetaHandler.GameVersion>> {
 
 	private final String metaUrl;
-	private List<GameVersion> versions;
+	private volatile List<GameVersion> versions;
+	private volatile Map<String, GameVersion> index;
+	private volatile GameVersion latestStable;
+	private CompletableFuture<List<GameVersion>> loading;
 
 	public MetaHandler(String url) {
 		this.metaUrl = url;
 	}
 
+	/**
+	 * Starts loading the versions in the background, later calls return the same future.
+	 */
+	public synchronized CompletableFuture<List<GameVersion>> loadAsync() {
+		if (loading == null) {
+			loading = supplyAsync(this::fetch).whenComplete((versions, throwable) -> {
+				if (throwable != null) {
+					completeExceptionally(throwable);
+				} else {
+					setVersions(versions);
+					complete(versions);
+				}
+			});
+		}
+
+		return loading;
+	}
+
 	public void load() throws IOException {
-		URL url = new URL(metaUrl);
+		await(loadAsync());
+	}
+
+	private List<GameVersion> fetch() throws IOException {
+		return parse(new StringReader(MetaCache.readTextFile(new URL(metaUrl))));
+	}
 
-		Json json = Json.read(Utils.readTextFile(url));
+	static List<GameVersion> parse(Reader in) throws IOException {
+		List<GameVersion> versions = new ArrayList<>();
 
-		this.versions = json.asJsonList()
-				.stream()
-				.map(GameVersion::new)
-				.collect(Collectors.toList());
+		try (JsonReader reader = new JsonReader(in)) {
+			reader.beginArray();
 
-		complete(versions);
+			while (reader.hasNext()) {
+				versions.add(GameVersion.read(reader));
+			}
+
+			reader.endArray();
+		}
+
+		return versions;
+	}
+
+	private void setVersions(List<GameVersion> versions) {
+		Map<String, GameVersion> index = new HashMap<>(versions.size() * 2);
+		GameVersion latestStable = null;
+
+		for (GameVersion version : versions) {
+			index.putIfAbsent(version.version, version);
+
+			if (latestStable == null && version.stable) {
+				latestStable = version;
+			}
+		}
+
+		this.index = index;
+		this.latestStable = latestStable;
+		this.versions = versions;
 	}
 
 	public List<GameVersion> getVersions() {
 		return Collections.unmodifiableList(versions);
 	}
 
+	public GameVersion getVersion(String version) {
+		return index.get(version);
+	}
+
 	public GameVersion getLatestVersion(boolean snapshot){
 		if(snapshot){
 			return versions.get(0);
 		} else {
-			return versions.stream()
-				.filter(GameVersion::isStable).findFirst().orElse(null);
+			return latestStable;
 		}
 	}
 
@@ -63,9 +120,37 @@ public class MetaHandler extends CompletableHandler<List<MetaHandler.GameVersion
 		String version;
 		boolean stable;
 
-		public GameVersion(Json json) {
-			version = json.at("version").asString();
-			stable = json.at("stable").asBoolean();
+		public GameVersion(String version, boolean stable) {
+			this.version = version;
+			this.stable = stable;
+		}
+
+		static GameVersion read(JsonReader reader) throws IOException {
+			String version = null;
+			boolean stable = false;
+
+			reader.beginObject();
+
+			while (reader.hasNext()) {
+				switch (reader.nextName()) {
+					case "version":
+						version = reader.nextString();
+						break;
+					case "stable":
+						stable = reader.nextBoolean();
+						break;
+					default:
+						reader.skipValue();
+				}
+			}
+
+			reader.endObject();
+
+			if (version == null) {
+				throw new IOException("Version entry without a version in meta");
+			}
+
+			return new GameVersion(version, stable);
 		}
 
 		public String getVersion() {
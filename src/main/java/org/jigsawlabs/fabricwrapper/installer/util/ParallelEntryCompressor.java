@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Deflates zip entries on a fork-join pool and writes them to a {@link RawZipOutput} in the order they were added,
+ * like pigz does for gzip streams.
+ *
+ * <p>The number of threads is read from {@value #THREADS_PROPERTY} and defaults to the number of processors,
+ * with {@code 1} every entry is compressed on the calling thread. At most {@code 4 * threads} entries are kept
+ * in memory while waiting to be written.</p>
+ */
+public final class ParallelEntryCompressor implements Closeable {
+	public static final String THREADS_PROPERTY = "fabric.wrapper.compressionThreads";
+
+	private final RawZipOutput output;
+	private final ForkJoinPool pool;
+	private final int window;
+	private final Deque<Pending> pending = new ArrayDeque<>();
+
+	public ParallelEntryCompressor(RawZipOutput output) {
+		this(output, Math.max(1, Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors())));
+	}
+
+	public ParallelEntryCompressor(RawZipOutput output, int threads) {
+		this.output = output;
+		this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+		this.window = threads * 4;
+	}
+
+	public void add(String name, byte[] data) throws IOException {
+		if (pool == null) {
+			output.writeDeflated(name, data);
+			return;
+		}
+
+		pending.add(new Pending(name, pool.submit(() -> compress(data))));
+
+		while (pending.size() > window) {
+			writeNext();
+		}
+	}
+
+	/**
+	 * Waits for every pending entry and writes it, entries written directly to the output afterwards keep their order.
+	 */
+	public void flush() throws IOException {
+		while (!pending.isEmpty()) {
+			writeNext();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			if (pool != null) pool.shutdownNow();
+		}
+	}
+
+	private void writeNext() throws IOException {
+		Pending next = pending.poll();
+		Compressed compressed;
+
+		try {
+			compressed = next.future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compressing " + next.name);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to compress " + next.name, e.getCause());
+		}
+
+		output.writeCompressed(next.name, RawZipFile.Entry.DEFLATED, compressed.crc, compressed.size, compressed.data, compressed.data.length);
+	}
+
+	private static Compressed compress(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		return new Compressed(crc.getValue(), data.length, RawZipOutput.deflate(data, Deflater.DEFAULT_COMPRESSION));
+	}
+
+	private static final class Pending {
+		final String name;
+		final Future<Compressed> future;
+
+		Pending(String name, Future<Compressed> future) {
+			this.name = name;
+			this.future = future;
+		}
+	}
+
+	private static final class Compressed {
+		final long crc;
+		final long size;
+		final byte[] data;
+
+		Compressed(long crc, long size, byte[] data) {
+			this.crc = crc;
+			this.size = size;
+			this.data = data;
+		}
+	}
+}
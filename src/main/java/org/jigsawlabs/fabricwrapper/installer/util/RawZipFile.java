@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Minimal zip reader that exposes the compressed bytes of every entry, so they can be copied without inflating them.
+ *
+ * <p>Only plain archives are supported: every entry must be stored or deflated, unencrypted, and neither the archive nor
+ * its entries may need zip64 records. The data of every entry has to lie before the central directory. Anything else is
+ * rejected with a {@link ZipException} when the file is opened.</p>
+ */
+public final class RawZipFile implements Closeable {
+	static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	static final int END_HEADER_SIGNATURE = 0x06054b50;
+	static final int LOCAL_HEADER_SIZE = 30;
+	static final int CENTRAL_HEADER_SIZE = 46;
+	static final int END_HEADER_SIZE = 22;
+
+	private final Path path;
+	private final FileChannel channel;
+	private final List<Entry> entries;
+
+	public RawZipFile(Path path) throws IOException {
+		this.path = path;
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+		try {
+			this.entries = Collections.unmodifiableList(readCentralDirectory());
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Copies the compressed bytes of {@code entry} to {@code target}.
+	 */
+	public void transferRaw(Entry entry, WritableByteChannel target) throws IOException {
+		long position = entry.dataOffset;
+		long remaining = entry.compressedSize;
+
+		while (remaining > 0) {
+			long transferred = channel.transferTo(position, remaining, target);
+			if (transferred <= 0) throw new EOFException("Unexpected end of " + path + " while copying " + entry.name);
+
+			position += transferred;
+			remaining -= transferred;
+		}
+	}
+
+	public byte[] readRaw(Entry entry) throws IOException {
+		if (entry.compressedSize > Integer.MAX_VALUE - 8) {
+			throw new ZipException("Entry " + entry.name + " in " + path + " is too large to read at once");
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) entry.compressedSize);
+		readFully(buffer, entry.dataOffset);
+		return buffer.array();
+	}
+
+	/**
+	 * @return the uncompressed content of {@code entry}
+	 */
+	public byte[] read(Entry entry) throws IOException {
+		byte[] raw = readRaw(entry);
+
+		if (entry.method == Entry.STORED) {
+			return raw;
+		}
+
+		Inflater inflater = new Inflater(true);
+
+		try {
+			inflater.setInput(raw);
+			ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(entry.size, Integer.MAX_VALUE - 8));
+			byte[] buffer = new byte[8192];
+			boolean paddingAdded = false;
+
+			while (!inflater.finished()) {
+				int len = inflater.inflate(buffer);
+
+				if (len == 0 && inflater.needsInput() && !paddingAdded) {
+					// raw inflate may need one extra dummy byte to finish, same as ZipFile does
+					inflater.setInput(new byte[1]);
+					paddingAdded = true;
+				} else if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new ZipException("Truncated deflate data for " + entry.name + " in " + path);
+				}
+
+				out.write(buffer, 0, len);
+			}
+
+			return out.toByteArray();
+		} catch (DataFormatException e) {
+			throw new ZipException("Invalid deflate data for " + entry.name + " in " + path + ": " + e.getMessage());
+		} finally {
+			inflater.end();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private long readDataOffset(String name, long localHeaderOffset, long compressedSize, long directoryOffset) throws IOException {
+		if (localHeaderOffset + LOCAL_HEADER_SIZE > directoryOffset) {
+			throw new ZipException("Invalid local header offset for " + name + " in " + path);
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(header, localHeaderOffset);
+
+		if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+			throw new ZipException("Invalid local header for " + name + " in " + path);
+		}
+
+		long dataOffset = localHeaderOffset + LOCAL_HEADER_SIZE + Short.toUnsignedInt(header.getShort(26)) + Short.toUnsignedInt(header.getShort(28));
+
+		// a copy running into the central directory would mean the sizes are wrong or stored elsewhere
+		if (dataOffset + compressedSize > directoryOffset) {
+			throw new ZipException("Data of " + name + " runs past the central directory in " + path);
+		}
+
+		return dataOffset;
+	}
+
+	private List<Entry> readCentralDirectory() throws IOException {
+		long size = channel.size();
+		int tailSize = (int) Math.min(size, END_HEADER_SIZE + 0xFFFF);
+		ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(tail, size - tailSize);
+
+		int end = -1;
+
+		for (int i = tailSize - END_HEADER_SIZE; i >= 0; i--) {
+			if (tail.getInt(i) == END_HEADER_SIGNATURE && i + END_HEADER_SIZE + Short.toUnsignedInt(tail.getShort(i + 20)) == tailSize) {
+				end = i;
+				break;
+			}
+		}
+
+		if (end < 0) {
+			throw new ZipException("No end of central directory found in " + path);
+		}
+
+		int count = Short.toUnsignedInt(tail.getShort(end + 10));
+		long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+		long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+
+		if (count == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+			throw new ZipException("Zip64 archives are not supported: " + path);
+		}
+
+		if (directoryOffset + directorySize > size) {
+			throw new ZipException("Invalid central directory in " + path);
+		}
+
+		ByteBuffer directory = ByteBuffer.allocate(Math.toIntExact(directorySize)).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(directory, directoryOffset);
+
+		List<Entry> entries = new ArrayList<>(count);
+		int pos = 0;
+
+		for (int i = 0; i < count; i++) {
+			if (pos + CENTRAL_HEADER_SIZE > directorySize || directory.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+				throw new ZipException("Invalid central directory entry in " + path);
+			}
+
+			int flags = Short.toUnsignedInt(directory.getShort(pos + 8));
+			int method = Short.toUnsignedInt(directory.getShort(pos + 10));
+			int nameLength = Short.toUnsignedInt(directory.getShort(pos + 28));
+			int extraLength = Short.toUnsignedInt(directory.getShort(pos + 30));
+			int commentLength = Short.toUnsignedInt(directory.getShort(pos + 32));
+
+			if (pos + CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength > directorySize) {
+				throw new ZipException("Invalid central directory entry in " + path);
+			}
+
+			String name = new String(directory.array(), pos + CENTRAL_HEADER_SIZE, nameLength, StandardCharsets.UTF_8);
+
+			if ((flags & 1) != 0) {
+				throw new ZipException("Encrypted entry " + name + " in " + path);
+			}
+
+			if (method != Entry.STORED && method != Entry.DEFLATED) {
+				throw new ZipException("Unsupported compression method " + method + " for " + name + " in " + path);
+			}
+
+			long compressedSize = Integer.toUnsignedLong(directory.getInt(pos + 20));
+			long uncompressedSize = Integer.toUnsignedLong(directory.getInt(pos + 24));
+			long localHeaderOffset = Integer.toUnsignedLong(directory.getInt(pos + 42));
+
+			// the real values of these are in a zip64 extra field
+			if (compressedSize == 0xFFFFFFFFL || uncompressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+				throw new ZipException("Zip64 entry " + name + " is not supported in " + path);
+			}
+
+			entries.add(new Entry(name, method,
+					directory.getInt(pos + 12),
+					Integer.toUnsignedLong(directory.getInt(pos + 16)),
+					compressedSize,
+					uncompressedSize,
+					readDataOffset(name, localHeaderOffset, compressedSize, directoryOffset)));
+
+			pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+		}
+
+		return entries;
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) throw new EOFException("Unexpected end of " + path);
+		}
+	}
+
+	public static final class Entry {
+		public static final int STORED = 0;
+		public static final int DEFLATED = 8;
+
+		public final String name;
+		public final int method;
+		/** Modification time in MS-DOS format, as stored in the archive. */
+		public final int dosTime;
+		public final long crc;
+		public final long compressedSize;
+		public final long size;
+		final long dataOffset;
+
+		Entry(String name, int method, int dosTime, long crc, long compressedSize, long size, long dataOffset) {
+			this.name = name;
+			this.method = method;
+			this.dosTime = dosTime;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.dataOffset = dataOffset;
+		}
+
+		public boolean isDirectory() {
+			return name.endsWith("/");
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Zip writer that accepts already compressed entries, used together with {@link RawZipFile} to merge jars
+ * without an inflate/deflate round-trip. Entries that don't come from another archive are deflated here.
+ */
+public final class RawZipOutput implements Closeable {
+	private static final int FLAG_UTF8 = 0x800;
+	private static final int VERSION_STORED = 10;
+	private static final int VERSION_DEFLATED = 20;
+
+	private final OutputStream out;
+	private final WritableByteChannel channel;
+	private final List<CentralEntry> entries = new ArrayList<>();
+	private final int currentDosTime = toDosTime(LocalDateTime.now());
+	private long offset;
+
+	public RawZipOutput(OutputStream out) {
+		this.out = new BufferedOutputStream(out, 64 * 1024);
+		this.channel = Channels.newChannel(this.out);
+	}
+
+	/**
+	 * Copies {@code entry} from {@code source} as-is, keeping its compressed data, CRC and sizes.
+	 */
+	public void copyRaw(RawZipFile source, RawZipFile.Entry entry) throws IOException {
+		writeLocalHeader(new CentralEntry(entry.name, entry.method, entry.dosTime, entry.crc, entry.compressedSize, entry.size, offset));
+		source.transferRaw(entry, channel);
+		offset += entry.compressedSize;
+	}
+
+	/**
+	 * Deflates {@code data} and writes it as a new entry.
+	 */
+	public void writeDeflated(String name, byte[] data) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		byte[] compressed = deflate(data, Deflater.DEFAULT_COMPRESSION);
+		writeCompressed(name, RawZipFile.Entry.DEFLATED, crc.getValue(), data.length, compressed, compressed.length);
+	}
+
+	/**
+	 * Writes an entry whose data was already compressed with {@code method} by the caller.
+	 */
+	public void writeCompressed(String name, int method, long crc, long size, byte[] compressed, int compressedLength) throws IOException {
+		writeLocalHeader(new CentralEntry(name, method, currentDosTime, crc, compressedLength, size, offset));
+		out.write(compressed, 0, compressedLength);
+		offset += compressedLength;
+	}
+
+	public static byte[] deflate(byte[] data, int level) {
+		Deflater deflater = new Deflater(level, true);
+
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			byte[] buffer = new byte[Math.max(64, data.length + (data.length >> 3) + 64)];
+			int length = 0;
+
+			while (!deflater.finished()) {
+				if (length == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				length += deflater.deflate(buffer, length, buffer.length - length);
+			}
+
+			return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			long directoryOffset = offset;
+
+			for (CentralEntry entry : entries) {
+				writeCentralHeader(entry);
+			}
+
+			if (entries.size() >= 0xFFFF || offset >= 0xFFFFFFFFL) {
+				throw new ZipException("Too many entries or too much data for a non-zip64 archive");
+			}
+
+			ByteBuffer end = ByteBuffer.allocate(RawZipFile.END_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			end.putInt(RawZipFile.END_HEADER_SIGNATURE);
+			end.putShort((short) 0);
+			end.putShort((short) 0);
+			end.putShort((short) entries.size());
+			end.putShort((short) entries.size());
+			end.putInt((int) (offset - directoryOffset));
+			end.putInt((int) directoryOffset);
+			end.putShort((short) 0);
+			out.write(end.array());
+		} finally {
+			out.close();
+		}
+	}
+
+	private void writeLocalHeader(CentralEntry entry) throws IOException {
+		if (entry.compressedSize >= 0xFFFFFFFFL || entry.size >= 0xFFFFFFFFL) {
+			throw new ZipException("Entry too large for a non-zip64 archive: " + entry.name);
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(RawZipFile.LOCAL_HEADER_SIZE + entry.name.length).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(RawZipFile.LOCAL_HEADER_SIGNATURE);
+		header.putShort((short) entry.version());
+		header.putShort((short) FLAG_UTF8);
+		header.putShort((short) entry.method);
+		header.putInt(entry.dosTime);
+		header.putInt((int) entry.crc);
+		header.putInt((int) entry.compressedSize);
+		header.putInt((int) entry.size);
+		header.putShort((short) entry.name.length);
+		header.putShort((short) 0);
+		header.put(entry.name);
+		out.write(header.array());
+
+		offset += header.capacity();
+		entries.add(entry);
+	}
+
+	private void writeCentralHeader(CentralEntry entry) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(RawZipFile.CENTRAL_HEADER_SIZE + entry.name.length).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(RawZipFile.CENTRAL_HEADER_SIGNATURE);
+		header.putShort((short) VERSION_DEFLATED);
+		header.putShort((short) entry.version());
+		header.putShort((short) FLAG_UTF8);
+		header.putShort((short) entry.method);
+		header.putInt(entry.dosTime);
+		header.putInt((int) entry.crc);
+		header.putInt((int) entry.compressedSize);
+		header.putInt((int) entry.size);
+		header.putShort((short) entry.name.length);
+		header.putShort((short) 0); // extra length
+		header.putShort((short) 0); // comment length
+		header.putShort((short) 0); // disk number
+		header.putShort((short) 0); // internal attributes
+		header.putInt(0); // external attributes
+		header.putInt((int) entry.localHeaderOffset);
+		header.put(entry.name);
+		out.write(header.array());
+
+		offset += header.capacity();
+	}
+
+	private static int toDosTime(LocalDateTime time) {
+		if (time.getYear() < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+
+		return (time.getYear() - 1980) << 25
+				| time.getMonthValue() << 21
+				| time.getDayOfMonth() << 16
+				| time.getHour() << 11
+				| time.getMinute() << 5
+				| time.getSecond() >> 1;
+	}
+
+	private static final class CentralEntry {
+		final byte[] name;
+		final int method;
+		final int dosTime;
+		final long crc;
+		final long compressedSize;
+		final long size;
+		final long localHeaderOffset;
+
+		CentralEntry(String name, int method, int dosTime, long crc, long compressedSize, long size, long localHeaderOffset) {
+			this.name = name.getBytes(StandardCharsets.UTF_8);
+			this.method = method;
+			this.dosTime = dosTime;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		int version() {
+			return method == RawZipFile.Entry.STORED ? VERSION_STORED : VERSION_DEFLATED;
+		}
+	}
+}
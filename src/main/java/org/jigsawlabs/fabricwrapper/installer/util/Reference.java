@@ -16,12 +16,56 @@
 
 package org.jigsawlabs.fabricwrapper.installer.util;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class Reference {
 	public static final String LOADER_NAME = "fabric-loader";
+	public static final String META_MIRRORS_PROPERTY = "fabric.wrapper.metaMirrors";
+	public static final String MAVEN_MIRRORS_PROPERTY = "fabric.wrapper.mavenMirrors";
 
 	public static String metaServerUrl = "https://meta.fabricmc.net/";
+	public static String mavenServerUrl = "https://maven.fabricmc.net/";
 
 	public static String getMetaServerEndpoint(String path) {
 		return metaServerUrl + path;
 	}
+
+	/**
+	 * Lists the places {@code url} can be fetched from, the url itself first followed by the configured mirrors.
+	 * Mirrors are comma separated base urls set with {@value #META_MIRRORS_PROPERTY} and {@value #MAVEN_MIRRORS_PROPERTY},
+	 * they replace the meta or maven server prefix of {@code url} and are tried in the order given.
+	 */
+	public static List<String> getMirrors(String url) {
+		List<String> urls = new ArrayList<>();
+		urls.add(url);
+
+		if (url.startsWith(metaServerUrl)) {
+			addMirrors(urls, url.substring(metaServerUrl.length()), System.getProperty(META_MIRRORS_PROPERTY));
+		} else if (url.startsWith(mavenServerUrl)) {
+			addMirrors(urls, url.substring(mavenServerUrl.length()), System.getProperty(MAVEN_MIRRORS_PROPERTY));
+		}
+
+		return urls;
+	}
+
+	private static void addMirrors(List<String> urls, String path, String mirrors) {
+		if (mirrors == null) {
+			return;
+		}
+
+		for (String mirror : mirrors.split(",")) {
+			mirror = mirror.trim();
+
+			if (mirror.isEmpty()) {
+				continue;
+			}
+
+			String url = (mirror.endsWith("/") ? mirror : mirror + "/") + path;
+
+			if (!urls.contains(url)) {
+				urls.add(url);
+			}
+		}
+	}
 }
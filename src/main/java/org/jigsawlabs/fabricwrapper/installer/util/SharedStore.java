@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A download store shared by every server directory on the host, so identical files are only downloaded and stored once.
+ *
+ * <p>Files are kept as {@code objects/<first two hash characters>/<sha1>} and hard linked into the server directories,
+ * or copied when the store is on another file system. Every object is filled while holding a file lock on
+ * {@code locks/<sha1>.lock}, which makes it safe for several wrappers to populate the store at the same time.</p>
+ *
+ * <p>The store is disabled unless {@value #PROPERTY} is set, either to {@code true} for {@code ~/.cache/fabric-wrapper}
+ * or to the directory to use.</p>
+ */
+public final class SharedStore {
+	public static final String PROPERTY = "fabric.wrapper.sharedStore";
+
+	private static final ConcurrentMap<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+	private final Path root;
+
+	public SharedStore(Path root) {
+		this.root = root;
+	}
+
+	/**
+	 * @return the configured store, or {@code null} when it is disabled
+	 */
+	public static SharedStore get() {
+		String value = System.getProperty(PROPERTY);
+
+		if (value == null || value.isEmpty() || value.equalsIgnoreCase("false")) {
+			return null;
+		}
+
+		if (value.equalsIgnoreCase("true")) {
+			return new SharedStore(Paths.get(System.getProperty("user.home"), ".cache", "fabric-wrapper"));
+		}
+
+		return new SharedStore(Paths.get(value));
+	}
+
+	/**
+	 * Same as {@link Utils#downloadFile(URL, Path, String)}, but goes through the shared store when it is enabled
+	 * and the expected hash is known.
+	 */
+	public static String downloadFile(URL url, Path path, String expectedSha1) throws IOException {
+		SharedStore store = get();
+
+		if (store == null || expectedSha1 == null) {
+			return Utils.downloadFile(url, path, expectedSha1);
+		}
+
+		store.download(url, path, expectedSha1);
+		return expectedSha1.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Places the file with hash {@code sha1} at {@code target}, downloading it into the store first if no other
+	 * server has done so yet.
+	 */
+	public void download(URL url, Path target, String sha1) throws IOException {
+		String hash = sha1.toLowerCase(Locale.ROOT);
+		Path object = getObject(hash);
+
+		withLock(hash, () -> {
+			boolean stored = VerificationRecord.matches(object, hash);
+			BootReport.cache("sharedStore", stored);
+
+			if (stored) {
+				// the download itself is recorded by Utils.downloadFile
+				if (FlightRecorderEvents.ENABLED) DownloadEvent.start().complete(url, true);
+			} else {
+				Utils.downloadFile(url, object, hash);
+				VerificationRecord.record(object, hash);
+			}
+
+			link(object, target);
+			return null;
+		});
+	}
+
+	public Path getObject(String sha1) {
+		return root.resolve("objects").resolve(sha1.substring(0, 2)).resolve(sha1);
+	}
+
+	private static void link(Path object, Path target) throws IOException {
+		Files.createDirectories(target.getParent());
+		Path tmp = target.resolveSibling(target.getFileName() + ".link");
+		Files.deleteIfExists(tmp);
+
+		try {
+			Files.createLink(tmp, object);
+		} catch (IOException | UnsupportedOperationException e) {
+			// hard links don't cross file systems and aren't supported everywhere
+			Files.copy(object, tmp, StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	@SuppressWarnings("try")
+	private <T> T withLock(String sha1, LockedAction<T> action) throws IOException {
+		Path lockFile = root.resolve("locks").resolve(sha1 + ".lock");
+		Files.createDirectories(lockFile.getParent());
+
+		// file locks are held by the whole process, threads of this process are kept apart separately
+		synchronized (LOCKS.computeIfAbsent(sha1, key -> new Object())) {
+			try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				 FileLock ignored = channel.lock()) {
+				return action.run();
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface LockedAction<T> {
+		T run() throws IOException;
+	}
+}
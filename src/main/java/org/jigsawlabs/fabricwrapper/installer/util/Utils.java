@@ -18,10 +18,16 @@ package org.jigsawlabs.fabricwrapper.installer.util;
 
 import java.io.*;
 import java.net.URL;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
@@ -47,6 +53,7 @@ public class Utils {
 			return super.newBundle(baseName, locale, format, loader, reload);
 		}
 	});
+	private static final int HASH_BUFFER_SIZE = 256 * 1024;
 
 	public static File findDefaultUserDir() {
 		String home = System.getProperty("user.home", ".");
@@ -81,10 +88,18 @@ public class Utils {
 	}
 
 	public static Reader urlReader(URL url) throws IOException {
+		if (HttpTransport.isHttp(url)) {
+			return new StringReader(HttpTransport.getText(url, "*/*"));
+		}
+
 		return new InputStreamReader(url.openStream(), StandardCharsets.UTF_8);
 	}
 
 	public static String readTextFile(URL url) throws IOException {
+		if (HttpTransport.isHttp(url)) {
+			return HttpTransport.getText(url, "*/*");
+		}
+
 		try (BufferedReader reader = new BufferedReader(urlReader(url))) {
 			return reader.lines().collect(Collectors.joining("\n"));
 		}
@@ -119,11 +134,90 @@ public class Utils {
 	}
 
 	public static void downloadFile(URL url, Path path) throws IOException {
+		downloadFile(url, path, null);
+	}
+
+	/**
+	 * Downloads {@code url} to {@code path}, hashing the data while it is written.
+	 *
+	 * <p>The data is written to {@code <path>.tmp} first. If that file is left over from an interrupted download and
+	 * {@code expectedSha1} is known, the rest is requested with a {@code Range} header and appended, falling back to a
+	 * full download when the server ignores the range or the result doesn't match. Without a hash a stale or corrupt
+	 * prefix couldn't be detected, so the file is downloaded in full.</p>
+	 *
+	 * @param expectedSha1 the hash the file must have, or {@code null} to skip the check
+	 * @return the SHA-1 of the downloaded file
+	 * @throws IOException if the download fails or the hash doesn't match
+	 */
+	public static String downloadFile(URL url, Path path, String expectedSha1) throws IOException {
 		Files.createDirectories(path.getParent());
+		Path partFile = path.resolveSibling(path.getFileName().toString() + ".tmp");
 
-		try (InputStream in = url.openStream()) {
-			Files.copy(in, path, StandardCopyOption.REPLACE_EXISTING);
+		DownloadEvent event = FlightRecorderEvents.ENABLED ? DownloadEvent.start() : null;
+		boolean resumed = expectedSha1 != null && Files.isRegularFile(partFile) && Files.size(partFile) > 0;
+		String sha1 = downloadPart(url, partFile, resumed, event);
+
+		if (resumed && !sha1.equalsIgnoreCase(expectedSha1)) {
+			sha1 = downloadPart(url, partFile, false, event);
 		}
+
+		if (event != null) event.complete(url, false);
+
+		if (expectedSha1 != null && !sha1.equalsIgnoreCase(expectedSha1)) {
+			Files.deleteIfExists(partFile);
+			throw new IOException(String.format("Hash mismatch for %s: expected %s, got %s", url, expectedSha1, sha1));
+		}
+
+		Files.move(partFile, path, StandardCopyOption.REPLACE_EXISTING);
+		return sha1;
+	}
+
+	private static String downloadPart(URL url, Path partFile, boolean resume, DownloadEvent event) throws IOException {
+		long existing = resume && Files.isRegularFile(partFile) ? Files.size(partFile) : 0;
+		MessageDigest digest = sha1Digest();
+		InputStream body;
+		boolean append = false;
+
+		if (HttpTransport.isHttp(url)) {
+			HttpRequest.Builder request = HttpTransport.request(url);
+
+			if (existing > 0) {
+				request.header("Range", "bytes=" + existing + "-");
+			}
+
+			HttpResponse<InputStream> response = HttpTransport.send(request.build());
+
+			if (existing > 0 && response.statusCode() == 206
+					&& response.headers().firstValue("Content-Range").map(range -> range.startsWith("bytes " + existing + "-")).orElse(false)) {
+				append = true;
+			} else if (existing > 0 && response.statusCode() != 200) {
+				// the range can't be served, usually because the partial file is already complete or invalid
+				response.body().close();
+				return downloadPart(url, partFile, false, event);
+			}
+
+			HttpTransport.checkStatus(response);
+			body = response.body();
+		} else {
+			body = url.openStream();
+		}
+
+		if (append) {
+			updateDigest(digest, partFile, existing);
+		}
+
+		try (InputStream in = new DigestInputStream(body, digest);
+			 OutputStream out = Files.newOutputStream(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+			byte[] buffer = new byte[64 * 1024];
+			int len;
+
+			while ((len = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, len);
+				if (event != null) event.addBytes(len);
+			}
+		}
+
+		return bytesToHex(digest.digest());
 	}
 
 	public static String getProfileIcon() {
@@ -150,19 +244,30 @@ public class Utils {
 		return bytesToHex(sha1(path));
 	}
 
+	public static String sha1String(String string) {
+		return bytesToHex(sha1Digest().digest(string.getBytes(StandardCharsets.UTF_8)));
+	}
+
 	public static byte[] sha1(Path path) throws IOException {
 		MessageDigest digest = sha1Digest();
+		updateDigest(digest, path, Files.size(path));
+		return digest.digest();
+	}
 
-		try (InputStream is = Files.newInputStream(path)) {
-			byte[] buffer = new byte[64 * 1024];
-			int len;
+	private static void updateDigest(MessageDigest digest, Path path, long length) throws IOException {
+		// plain reads instead of a mapping, which would keep the file from being replaced on Windows until it is collected
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(1, Math.min(HASH_BUFFER_SIZE, length)));
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			for (long remaining = length; remaining > 0; ) {
+				buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+				int read = channel.read(buffer);
+				if (read < 0) throw new EOFException("Unexpected end of " + path);
 
-			while ((len = is.read(buffer)) >= 0) {
-				digest.update(buffer, 0, len);
+				digest.update(buffer.array(), 0, read);
+				remaining -= read;
 			}
 		}
-
-		return digest.digest();
 	}
 
 	private static MessageDigest sha1Digest() {
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Remembers the hash of a file that was already verified, so it doesn't have to be hashed again on every start.
+ *
+ * <p>The record is a hidden {@code .<name>.verified} file next to the artifact holding its size, modification time,
+ * file key and SHA-1. It is only trusted while all of those attributes are unchanged.</p>
+ */
+public final class VerificationRecord {
+	private VerificationRecord() { }
+
+	/**
+	 * Checks {@code file} against {@code expectedSha1}, hashing it only if there is no valid record for it.
+	 */
+	public static boolean matches(Path file, String expectedSha1) throws IOException {
+		return Files.isRegularFile(file) && getSha1(file).equalsIgnoreCase(expectedSha1);
+	}
+
+	/**
+	 * Same as {@link #matches(Path, String)}, but rejects a file with the wrong size without hashing it.
+	 */
+	public static boolean matches(Path file, String expectedSha1, long expectedSize) throws IOException {
+		return Files.isRegularFile(file) && Files.size(file) == expectedSize && getSha1(file).equalsIgnoreCase(expectedSha1);
+	}
+
+	/**
+	 * @return the SHA-1 of {@code file}, taken from its record when the file is unchanged
+	 */
+	public static String getSha1(Path file) throws IOException {
+		HashVerificationEvent event = FlightRecorderEvents.ENABLED ? HashVerificationEvent.start() : null;
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		Path recordFile = getRecordFile(file);
+
+		if (Files.isRegularFile(recordFile)) {
+			Properties record = new Properties();
+
+			try (InputStream is = Files.newInputStream(recordFile)) {
+				record.load(is);
+			} catch (IOException e) {
+				record.clear();
+			}
+
+			if (record.getProperty("sha1") != null && describe(attributes).equals(record.getProperty("attributes"))) {
+				if (event != null) event.complete(file, attributes.size(), true);
+				return record.getProperty("sha1");
+			}
+		}
+
+		String sha1 = Utils.sha1String(file);
+		if (event != null) event.complete(file, attributes.size(), false);
+		write(recordFile, attributes, sha1);
+		return sha1;
+	}
+
+	/**
+	 * Stores {@code sha1} as the verified hash of {@code file}, for files that were hashed while being written.
+	 */
+	public static void record(Path file, String sha1) throws IOException {
+		write(getRecordFile(file), Files.readAttributes(file, BasicFileAttributes.class), sha1);
+	}
+
+	private static void write(Path recordFile, BasicFileAttributes attributes, String sha1) {
+		Properties record = new Properties();
+		record.setProperty("attributes", describe(attributes));
+		record.setProperty("sha1", sha1);
+
+		try (OutputStream os = Files.newOutputStream(recordFile)) {
+			record.store(os, null);
+		} catch (IOException e) {
+			// the record is only an optimization, the file gets hashed again next time
+		}
+	}
+
+	private static String describe(BasicFileAttributes attributes) {
+		return attributes.size() + ":" + attributes.lastModifiedTime().toMillis() + ":" + Objects.toString(attributes.fileKey(), "");
+	}
+
+	private static Path getRecordFile(Path file) {
+		return file.resolveSibling("." + file.getFileName() + ".verified");
+	}
+}
@@ -22,16 +22,13 @@ package org.jigsawlabs.fabricwrapper.jumploader.util;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
+import org.jigsawlabs.fabricwrapper.installer.util.HttpTransport;
+import org.jigsawlabs.fabricwrapper.installer.util.MetaCache;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
-import java.net.URLConnection;
-import java.nio.charset.StandardCharsets;
 
 public class RequestUtils {
 	private RequestUtils() {}
@@ -41,14 +38,8 @@ public class RequestUtils {
 	}
 
 	public static JsonElement getJson(URL requestUrl) throws IOException {
-		URLConnection conn = requestUrl.openConnection();
-		conn.setRequestProperty("User-Agent", "FabricWrapper");
-		conn.setRequestProperty("Accept", "application/json");
-
-		try (InputStream res = conn.getInputStream(); InputStreamReader isr = new InputStreamReader(res)) {
-			JsonParser parser = new JsonParser();
-			return parser.parse(isr);
-		}
+		JsonParser parser = new JsonParser();
+		return parser.parse(MetaCache.readTextFile(requestUrl));
 	}
 
 	/*public static int postJsonForResCode(URL requestUrl, JsonElement requestData) throws IOException {
@@ -67,19 +58,7 @@ public class RequestUtils {
 	}*/
 
 	public static String getString(URL requestUrl) throws IOException {
-		URLConnection conn = requestUrl.openConnection();
-		conn.setRequestProperty("User-Agent", "FabricWrapper");
-		conn.setRequestProperty("Accept", "text/plain");
-
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		byte[] buffer = new byte[1024];
-		try (InputStream res = conn.getInputStream()) {
-			int n;
-			while ((n = res.read(buffer, 0, 1024)) != -1) {
-				baos.write(buffer, 0, n);
-			}
-		}
-		return baos.toString(StandardCharsets.UTF_8.name());
+		return HttpTransport.getText(requestUrl, "text/plain");
 	}
 
 	public static URI resolveMavenPath(URI baseUrl, String mavenPath) {
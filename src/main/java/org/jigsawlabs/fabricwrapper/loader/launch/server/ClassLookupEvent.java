@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.loader.launch.server;
+
+import org.jigsawlabs.fabricwrapper.installer.util.FlightRecorderEvents;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.security.CodeSource;
+
+/**
+ * Flight Recorder event for a {@link InjectingURLClassLoader#loadClass(String)} call.
+ *
+ * <p>The event object is created for every lookup when {@link FlightRecorderEvents#ENABLED}, it doesn't escape and is
+ * optimized away while no recording is running. The owning jar is only looked up for committed events.</p>
+ */
+@Name("org.jigsawlabs.fabricwrapper.ClassLookup")
+@Label("Class Lookup")
+@Category({"Fabric Wrapper", "Class Loading"})
+@Description("A class was requested from the server class loader")
+@StackTrace(false)
+class ClassLookupEvent extends Event {
+	@Label("Class Name")
+	String className;
+
+	@Label("Jar")
+	@Description("Where the class was loaded from, when it is on the server class path")
+	String jar;
+
+	@Label("Found")
+	boolean found;
+
+	@Label("Defined")
+	@Description("Whether this lookup defined the class, instead of finding it already loaded or in the parent")
+	boolean defined;
+
+	@Label("Parent")
+	@Description("Whether the lookup fell through to the parent loader")
+	boolean parent;
+
+	void complete(ClassLoader loader, String name, Class<?> c, boolean defined) {
+		end();
+
+		if (shouldCommit()) {
+			this.className = name;
+			this.found = c != null;
+			this.defined = defined;
+			this.parent = c == null || c.getClassLoader() != loader;
+
+			if (c != null && !parent) {
+				CodeSource codeSource = c.getProtectionDomain().getCodeSource();
+				this.jar = codeSource != null && codeSource.getLocation() != null ? codeSource.getLocation().toString() : null;
+			}
+
+			commit();
+		}
+	}
+}
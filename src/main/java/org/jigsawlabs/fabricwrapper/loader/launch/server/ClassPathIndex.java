@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.loader.launch.server;
+
+import org.jigsawlabs.fabricwrapper.installer.util.BootReport;
+import org.jigsawlabs.fabricwrapper.installer.util.Utils;
+import org.jigsawlabs.fabricwrapper.loader.util.UrlConversionException;
+import org.jigsawlabs.fabricwrapper.loader.util.UrlUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Maps every package on a class path to the jars containing it, so a class lookup only has to open those jars.
+ *
+ * <p>Packages are stored in their path form ({@code net/minecraft/server}), the default package is the empty string.
+ * Entries under {@code META-INF/versions/<n>/} count for their unversioned package. Class path entries that are not
+ * jars (directories, remote urls) can't be indexed, {@link #isComplete()} is false when there are any.</p>
+ *
+ * <p>It also holds a Bloom filter of every entry name, which rules out most missing classes and resources
+ * without opening a jar. Directories are added with and without their trailing slash, and versioned entries under
+ * both names, so the filter never rules out a name a jar would answer to.</p>
+ *
+ * <p>The index is saved to a file and reused while every jar has the same url, size and modification time.</p>
+ */
+public final class ClassPathIndex {
+	private static final int FORMAT = 3;
+	private static final int[] NONE = new int[0];
+
+	private final URL[] urls;
+	private final Path[] jars;
+	private final Map<String, int[]> packages;
+	private final NameFilter names;
+	private final boolean complete;
+	private String key;
+
+	private ClassPathIndex(URL[] urls, Path[] jars, Map<String, int[]> packages, NameFilter names, boolean complete) {
+		this.urls = urls;
+		this.jars = jars;
+		this.packages = packages;
+		this.names = names;
+		this.complete = complete;
+	}
+
+	/**
+	 * Reads the index saved at {@code file} if it still describes {@code urls}, otherwise builds a new one and saves it.
+	 */
+	public static ClassPathIndex load(Path file, URL[] urls) throws IOException {
+		Path[] jars = getJars(urls);
+		String key = getKey(urls, jars);
+
+		if (Files.isRegularFile(file)) {
+			try {
+				ClassPathIndex index = read(file, key, urls, jars);
+
+				if (index != null) {
+					index.key = key;
+					BootReport.cache("classIndex", true);
+					return index;
+				}
+			} catch (IOException e) {
+				// unreadable index, rebuild it
+			}
+		}
+
+		ClassPathIndex index = build(urls, jars);
+		index.key = key;
+		BootReport.cache("classIndex", false);
+
+		try {
+			index.write(file, key);
+		} catch (IOException e) {
+			// the index is only an optimization, it is built again next time
+		}
+
+		return index;
+	}
+
+	public static ClassPathIndex build(URL[] urls) throws IOException {
+		return build(urls, getJars(urls));
+	}
+
+	private static ClassPathIndex build(URL[] urls, Path[] jars) throws IOException {
+		Map<String, int[]> packages = new HashMap<>();
+		List<String> names = new ArrayList<>();
+		boolean complete = true;
+
+		for (int i = 0; i < jars.length; i++) {
+			if (jars[i] == null) {
+				complete = false;
+				continue;
+			}
+
+			try (ZipFile zip = new ZipFile(jars[i].toFile())) {
+				Enumeration<? extends ZipEntry> entries = zip.entries();
+				String last = null;
+
+				while (entries.hasMoreElements()) {
+					ZipEntry entry = entries.nextElement();
+					String name = stripVersion(entry.getName());
+					names.add(name);
+
+					// the filter must never rule out a name the jar answers to, versioned names can be asked for directly
+					if (!name.equals(entry.getName())) {
+						names.add(entry.getName());
+					}
+
+					if (entry.isDirectory()) {
+						// ZipFile also finds "dir/" when asked for "dir"
+						names.add(entry.getName().substring(0, entry.getName().length() - 1));
+
+						if (name.length() > 1) {
+							names.add(name.substring(0, name.length() - 1));
+						}
+
+						continue;
+					}
+
+					int separator = name.lastIndexOf('/');
+					String pkg = separator < 0 ? "" : name.substring(0, separator);
+
+					// entries of one package are usually next to each other
+					if (pkg.equals(last)) {
+						continue;
+					}
+
+					last = pkg;
+					add(packages, pkg, i);
+				}
+			}
+		}
+
+		return new ClassPathIndex(urls, jars, packages, NameFilter.of(names), complete);
+	}
+
+	/**
+	 * @return a hash of the class path this index was loaded for, {@code null} if it wasn't loaded from a file
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return false if no indexed jar has an entry called {@code name}, true if one might have it
+	 */
+	public boolean mightContain(String name) {
+		return names.mightContain(name);
+	}
+
+	/**
+	 * @return the class path positions of the jars containing {@code pkg} in class path order
+	 */
+	public int[] getJars(String pkg) {
+		return packages.getOrDefault(pkg, NONE);
+	}
+
+	public URL getUrl(int jar) {
+		return urls[jar];
+	}
+
+	public Path getPath(int jar) {
+		return jars[jar];
+	}
+
+	public int size() {
+		return urls.length;
+	}
+
+	/**
+	 * @return false if part of the class path couldn't be indexed and has to be searched the slow way
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	private static void add(Map<String, int[]> packages, String pkg, int jar) {
+		int[] existing = packages.get(pkg);
+
+		if (existing == null) {
+			packages.put(pkg, new int[]{jar});
+		} else if (existing[existing.length - 1] != jar) {
+			int[] jars = Arrays.copyOf(existing, existing.length + 1);
+			jars[existing.length] = jar;
+			packages.put(pkg, jars);
+		}
+	}
+
+	private static String stripVersion(String name) {
+		if (name.startsWith("META-INF/versions/")) {
+			int end = name.indexOf('/', "META-INF/versions/".length());
+
+			if (end > 0) {
+				return name.substring(end + 1);
+			}
+		}
+
+		return name;
+	}
+
+	private static Path[] getJars(URL[] urls) {
+		Path[] jars = new Path[urls.length];
+
+		for (int i = 0; i < urls.length; i++) {
+			if (!urls[i].getProtocol().equals("file")) {
+				continue;
+			}
+
+			try {
+				Path path = UrlUtil.asPath(urls[i]);
+
+				if (Files.isRegularFile(path)) {
+					jars[i] = path;
+				}
+			} catch (UrlConversionException e) {
+				// searched by the URLClassLoader instead
+			}
+		}
+
+		return jars;
+	}
+
+	private static String getKey(URL[] urls, Path[] jars) throws IOException {
+		StringBuilder key = new StringBuilder();
+
+		for (int i = 0; i < urls.length; i++) {
+			key.append(urls[i]).append('\n');
+
+			if (jars[i] != null) {
+				BasicFileAttributes attributes = Files.readAttributes(jars[i], BasicFileAttributes.class);
+				key.append(attributes.size()).append(':').append(attributes.lastModifiedTime().toMillis()).append('\n');
+			}
+		}
+
+		return Utils.sha1String(key.toString());
+	}
+
+	private static ClassPathIndex read(Path file, String key, URL[] urls, Path[] jars) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != FORMAT || !in.readUTF().equals(key)) {
+				return null;
+			}
+
+			boolean complete = in.readBoolean();
+			int count = in.readInt();
+			Map<String, int[]> packages = new HashMap<>(count * 2);
+
+			for (int i = 0; i < count; i++) {
+				String pkg = in.readUTF();
+				int[] owners = new int[in.readUnsignedShort()];
+
+				for (int j = 0; j < owners.length; j++) {
+					owners[j] = in.readUnsignedShort();
+				}
+
+				packages.put(pkg, owners);
+			}
+
+			return new ClassPathIndex(urls, jars, packages, NameFilter.read(in), complete);
+		}
+	}
+
+	private void write(Path file, String key) throws IOException {
+		Files.createDirectories(file.getParent());
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+			out.writeInt(FORMAT);
+			out.writeUTF(key);
+			out.writeBoolean(complete);
+			out.writeInt(packages.size());
+
+			for (Map.Entry<String, int[]> entry : packages.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeShort(entry.getValue().length);
+
+				for (int jar : entry.getValue()) {
+					out.writeShort(jar);
+				}
+			}
+
+			names.write(out);
+		}
+
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
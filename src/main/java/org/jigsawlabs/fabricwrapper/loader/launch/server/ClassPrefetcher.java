@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.loader.launch.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jigsawlabs.fabricwrapper.jumploader.launch.ReflectionUtil;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the classes the server is going to need on background threads, ahead of the thread that needs them.
+ *
+ * <p>On a boot without a trace it records the order in which classes are first requested from the loader during the
+ * first {@value #WINDOW_PROPERTY} seconds (default {@value #DEFAULT_WINDOW}) and saves it. Later boots load the traced
+ * classes with {@value #THREADS_PROPERTY} threads (default {@value #DEFAULT_THREADS}) and, once the window is over, log
+ * how many of the prefetched classes were used and how many were loaded for nothing.
+ * The trace is tied to the key of the {@link ClassPathIndex} and recorded again when the class path changes.</p>
+ *
+ * <p>Classes are loaded without being initialized, so no static initializer runs earlier or on another thread than
+ * it would otherwise. A prefetched class counts as used when the server requested it through the loader, while it was
+ * being prefetched or later. A loaded class is mostly answered by the JVM without asking the loader again, so where the
+ * runtime can tell (before Java 22) a class the server has initialized by the end of the window counts as well.
+ * Classes only used as types, like most interfaces, are therefore reported as wasted.</p>
+ */
+public final class ClassPrefetcher implements InjectingURLClassLoader.ClassLoadObserver {
+	public static final String PROPERTY = "fabric.wrapper.prefetchClasses";
+	public static final String WINDOW_PROPERTY = "fabric.wrapper.prefetchWindow";
+	public static final String THREADS_PROPERTY = "fabric.wrapper.prefetchThreads";
+	private static final int DEFAULT_WINDOW = 120;
+	private static final int DEFAULT_THREADS = 2;
+	private static final int MAX_TRACE_LENGTH = 100_000;
+	private static final Logger LOGGER = LogManager.getLogger("FabricWrapper");
+
+	private final Path traceFile;
+	private final String key;
+	private final List<String> trace;
+
+	private final Set<String> requested = ConcurrentHashMap.newKeySet();
+	private final ConcurrentLinkedQueue<String> order = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger recorded = new AtomicInteger();
+	private final Map<String, Class<?>> prefetched = new ConcurrentHashMap<>();
+	private final AtomicInteger alreadyLoaded = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+	private volatile boolean recording = true;
+
+	private ClassPrefetcher(Path traceFile, String key, List<String> trace) {
+		this.traceFile = traceFile;
+		this.key = key;
+		this.trace = trace;
+	}
+
+	public static boolean isEnabled() {
+		return Boolean.getBoolean(PROPERTY);
+	}
+
+	/**
+	 * @param index the index of the class path the trace belongs to, must have been loaded from a file
+	 */
+	public static ClassPrefetcher create(Path traceFile, ClassPathIndex index) {
+		return new ClassPrefetcher(traceFile, index.getKey(), readTrace(traceFile, index.getKey()));
+	}
+
+	/**
+	 * Starts prefetching into {@code loader} if there is a trace and schedules the end of the recording window.
+	 */
+	public void start(InjectingURLClassLoader loader) {
+		loader.setObserver(this);
+
+		if (!trace.isEmpty()) {
+			AtomicInteger cursor = new AtomicInteger();
+			int threads = Math.max(1, Integer.getInteger(THREADS_PROPERTY, DEFAULT_THREADS));
+
+			for (int i = 0; i < threads; i++) {
+				new PrefetchThread(() -> prefetch(loader, cursor), i + 1).start();
+			}
+		}
+
+		Thread window = new Thread(() -> {
+			try {
+				Thread.sleep(TimeUnit.SECONDS.toMillis(Math.max(1, Integer.getInteger(WINDOW_PROPERTY, DEFAULT_WINDOW))));
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			finish(loader);
+		}, "FabricWrapper Prefetch Report");
+		window.setDaemon(true);
+		window.start();
+	}
+
+	@Override
+	public void classLoaded(String name) {
+		if (!recording || Thread.currentThread() instanceof PrefetchThread) {
+			return;
+		}
+
+		if (requested.add(name) && recorded.incrementAndGet() <= MAX_TRACE_LENGTH) {
+			order.add(name);
+		}
+	}
+
+	private void prefetch(InjectingURLClassLoader loader, AtomicInteger cursor) {
+		int i;
+
+		while (recording && (i = cursor.getAndIncrement()) < trace.size()) {
+			String name = trace.get(i);
+
+			// the server got there first, nothing left to win for this one
+			if (requested.contains(name)) {
+				alreadyLoaded.incrementAndGet();
+				continue;
+			}
+
+			try {
+				prefetched.put(name, Class.forName(name, false, loader));
+			} catch (ClassNotFoundException | LinkageError e) {
+				failed.incrementAndGet();
+			}
+		}
+	}
+
+	private void finish(InjectingURLClassLoader loader) {
+		recording = false;
+		loader.setObserver(null);
+
+		if (trace.isEmpty()) {
+			try {
+				writeTrace(new ArrayList<>(order));
+				LOGGER.info("Recorded {} classes for prefetching on the next start.", order.size());
+			} catch (IOException e) {
+				LOGGER.warn("Failed to save the class load trace", e);
+			}
+
+			return;
+		}
+
+		MethodHandle shouldBeInitialized = findShouldBeInitialized();
+		int hits = 0;
+
+		for (Map.Entry<String, Class<?>> entry : prefetched.entrySet()) {
+			if (requested.contains(entry.getKey()) || shouldBeInitialized != null && isInitialized(shouldBeInitialized, entry.getValue())) {
+				hits++;
+			}
+		}
+
+		LOGGER.info("Class prefetch: {} of {} prefetched classes were used, {} wasted, {} already loaded by the server, {} failed.",
+				hits, prefetched.size(), prefetched.size() - hits, alreadyLoaded.get(), failed.get());
+	}
+
+	/**
+	 * @return {@code Unsafe.shouldBeInitialized} bound to the instance, {@code null} on runtimes that removed it (Java 22+)
+	 */
+	private static MethodHandle findShouldBeInitialized() {
+		try {
+			Object unsafe = ReflectionUtil.getUnsafe();
+			return MethodHandles.lookup()
+					.findVirtual(unsafe.getClass(), "shouldBeInitialized", MethodType.methodType(boolean.class, Class.class))
+					.bindTo(unsafe);
+		} catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+			return null;
+		}
+	}
+
+	private static boolean isInitialized(MethodHandle shouldBeInitialized, Class<?> c) {
+		try {
+			return !(boolean) shouldBeInitialized.invokeExact(c);
+		} catch (Throwable t) {
+			return false;
+		}
+	}
+
+	private static List<String> readTrace(Path traceFile, String key) {
+		if (key == null || !Files.isRegularFile(traceFile)) {
+			return Collections.emptyList();
+		}
+
+		try (BufferedReader reader = Files.newBufferedReader(traceFile, StandardCharsets.UTF_8)) {
+			if (!("# " + key).equals(reader.readLine())) {
+				return Collections.emptyList();
+			}
+
+			List<String> trace = new ArrayList<>();
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				if (!line.isEmpty()) {
+					trace.add(line);
+				}
+			}
+
+			return trace;
+		} catch (IOException e) {
+			return Collections.emptyList();
+		}
+	}
+
+	private void writeTrace(List<String> names) throws IOException {
+		if (key == null) {
+			return;
+		}
+
+		Files.createDirectories(traceFile.getParent());
+		Path tmp = traceFile.resolveSibling(traceFile.getFileName() + ".tmp");
+
+		try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+			writer.write("# " + key);
+			writer.newLine();
+
+			for (String name : names) {
+				writer.write(name);
+				writer.newLine();
+			}
+		}
+
+		Files.move(tmp, traceFile, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static final class PrefetchThread extends Thread {
+		PrefetchThread(Runnable runnable, int number) {
+			super(runnable, "FabricWrapper Prefetch #" + number);
+			setDaemon(true);
+			setPriority(MIN_PRIORITY);
+		}
+	}
+}
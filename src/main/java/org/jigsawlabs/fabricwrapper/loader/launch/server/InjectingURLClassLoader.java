@@ -16,55 +16,298 @@
 
 package org.jigsawlabs.fabricwrapper.loader.launch.server;
 
+import org.jigsawlabs.fabricwrapper.installer.util.FlightRecorderEvents;
+import org.jigsawlabs.fabricwrapper.loader.util.PrefixTrie;
+
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.security.CodeSigner;
+import java.security.CodeSource;
 import java.util.Arrays;
-import java.util.List;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipFile;
 
 public class InjectingURLClassLoader extends URLClassLoader {
-	private final List<String> exclusions;
+	static {
+		registerAsParallelCapable();
+	}
+
+	private final PrefixTrie exclusions;
+	private final ClassPathIndex index;
+	private final LaunchArchive archive;
+	private final AtomicReferenceArray<JarFile> jars;
+	private final CodeSource[] codeSources;
+	private volatile ClassLoadObserver observer;
 
 	public InjectingURLClassLoader(URL[] urls, ClassLoader classLoader, String... exclusions) {
+		this(urls, classLoader, null, exclusions);
+	}
+
+	/**
+	 * @param index an index of {@code urls}, classes are then only looked up in the jars that contain their package
+	 */
+	public InjectingURLClassLoader(URL[] urls, ClassLoader classLoader, ClassPathIndex index, String... exclusions) {
+		this(urls, classLoader, index, null, exclusions);
+	}
+
+	/**
+	 * @param archive an archive built from the jars of {@code index}, classes and resources on it are read from there
+	 */
+	public InjectingURLClassLoader(URL[] urls, ClassLoader classLoader, ClassPathIndex index, LaunchArchive archive, String... exclusions) {
 		super(urls, classLoader);
-		this.exclusions  = Arrays.asList(exclusions);
+
+		if (archive != null && index == null) {
+			throw new IllegalArgumentException("A launch archive can only be used together with the class path index it was built for");
+		}
+
+		this.exclusions  = new PrefixTrie(Arrays.asList(exclusions));
+		this.index = index;
+		this.archive = archive;
+		this.jars = index == null ? null : new AtomicReferenceArray<>(index.size());
+		this.codeSources = index == null ? null : new CodeSource[index.size()];
+
+		for (int i = 0; codeSources != null && i < codeSources.length; i++) {
+			codeSources[i] = new CodeSource(index.getUrl(i), (CodeSigner[]) null);
+		}
+	}
+
+	/**
+	 * Sets the observer told about every class this loader hands out from its own class path, {@code null} to remove it.
+	 */
+	public void setObserver(ClassLoadObserver observer) {
+		this.observer = observer;
+	}
+
+	/**
+	 * @return false if {@code name} is certainly not on the class path of this loader
+	 */
+	private boolean mightContain(String name) {
+		return index == null || !index.isComplete() || index.mightContain(name);
 	}
 
 	@Override
-	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
-		synchronized (getClassLoadingLock(name)) {
-			Class c = findLoadedClass(name);
-
-			if (c == null) {
-				boolean excluded = false;
-				for (String s : exclusions) {
-					if (name.startsWith(s)) {
-						excluded = true;
-						break;
-					}
+	public URL findResource(String name) {
+		return mightContain(name) ? super.findResource(name) : null;
+	}
+
+	@Override
+	public Enumeration<URL> findResources(String name) throws IOException {
+		return mightContain(name) ? super.findResources(name) : Collections.emptyEnumeration();
+	}
+
+	@Override
+	public InputStream getResourceAsStream(String name) {
+		if (archive == null) {
+			return super.getResourceAsStream(name);
+		}
+
+		// same order as getResource, the parent wins
+		URL url = getParent().getResource(name);
+
+		if (url == null) {
+			int entry = archive.find(name);
+
+			if (entry >= 0) {
+				return archive.getInputStream(entry);
+			} else if (mightContain(name)) {
+				// directories aren't archived, the jars answer whatever the filter can't rule out
+				return super.getResourceAsStream(name);
+			}
+
+			return null;
+		}
+
+		try {
+			return url.openStream();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		if (index == null) {
+			return super.findClass(name);
+		}
+
+		String path = name.replace('.', '/').concat(".class");
+		int separator = path.lastIndexOf('/');
+
+		if (archive != null) {
+			int entry = archive.find(path);
+
+			if (entry >= 0) {
+				try {
+					return defineArchivedClass(name, entry);
+				} catch (IOException e) {
+					throw new ClassNotFoundException(name, e);
 				}
+			}
+		} else {
+			for (int jar : index.getJars(separator < 0 ? "" : path.substring(0, separator))) {
+				try {
+					JarFile jarFile = getJar(jar);
+					JarEntry entry = jarFile.getJarEntry(path);
 
-				if (!excluded) {
-					try {
-						c = findClass(name);
-					} catch (ClassNotFoundException e) {
-						// pass
+					if (entry != null) {
+						return defineClass(name, jar, jarFile, entry);
 					}
+				} catch (IOException e) {
+					throw new ClassNotFoundException(name, e);
 				}
 			}
+		}
 
-			if (c == null) {
-				c = getParent().loadClass(name);
+		if (!index.isComplete()) {
+			return super.findClass(name);
+		}
+
+		throw new ClassNotFoundException(name);
+	}
+
+	private Class<?> defineClass(String name, int jar, JarFile jarFile, JarEntry entry) throws IOException {
+		byte[] bytes;
+
+		try (InputStream is = jarFile.getInputStream(entry)) {
+			bytes = is.readAllBytes();
+		}
+
+		int separator = name.lastIndexOf('.');
+
+		if (separator > 0 && getDefinedPackage(name.substring(0, separator)) == null) {
+			definePackage(name.substring(0, separator), jar, jarFile.getManifest());
+		}
+
+		CodeSigner[] signers = entry.getCodeSigners();
+		CodeSource codeSource = signers == null ? codeSources[jar] : new CodeSource(index.getUrl(jar), signers);
+		return defineClass(name, bytes, 0, bytes.length, codeSource);
+	}
+
+	/**
+	 * Defines a class straight from the mapped archive, the JVM reads the bytes from the direct buffer without a heap copy.
+	 */
+	private Class<?> defineArchivedClass(String name, int entry) throws IOException {
+		int jar = archive.getJar(entry);
+		int separator = name.lastIndexOf('.');
+
+		if (separator > 0 && getDefinedPackage(name.substring(0, separator)) == null) {
+			definePackage(name.substring(0, separator), jar, archive.getManifest(jar));
+		}
+
+		return defineClass(name, archive.getData(entry), codeSources[jar]);
+	}
+
+	private void definePackage(String pkg, int jar, Manifest manifest) {
+		try {
+			if (manifest != null) {
+				definePackage(pkg, manifest, index.getUrl(jar));
+			} else {
+				definePackage(pkg, null, null, null, null, null, null, null);
+			}
+		} catch (IllegalArgumentException e) {
+			// defined by another thread in the meantime
+		}
+	}
+
+	private JarFile getJar(int jar) throws IOException {
+		JarFile jarFile = jars.get(jar);
+
+		if (jarFile == null) {
+			synchronized (jars) {
+				jarFile = jars.get(jar);
+
+				if (jarFile == null) {
+					jarFile = new JarFile(index.getPath(jar).toFile(), true, ZipFile.OPEN_READ, JarFile.runtimeVersion());
+					jars.set(jar, jarFile);
+				}
 			}
+		}
+
+		return jarFile;
+	}
 
-			if (c == null) {
-				throw new ClassNotFoundException(name);
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			if (jars != null) {
+				synchronized (jars) {
+					for (int i = 0; i < jars.length(); i++) {
+						JarFile jar = jars.getAndSet(i, null);
+
+						if (jar != null) {
+							jar.close();
+						}
+					}
+				}
 			}
+		}
+	}
+
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		ClassLookupEvent event = FlightRecorderEvents.ENABLED ? new ClassLookupEvent() : null;
+		if (event != null) event.begin();
+		Class<?> c = null;
+		boolean defined = false;
 
-			if (resolve) {
-				resolveClass(c);
+		try {
+			// only the platform can define java.* classes, there is no point in looking for them here
+			if (name.startsWith("java.")) {
+				c = getParent().loadClass(name);
+				return c;
 			}
 
-			return c;
+			synchronized (getClassLoadingLock(name)) {
+				c = findLoadedClass(name);
+
+				if (c == null) {
+					boolean excluded = exclusions.matches(name);
+
+					if (!excluded && mightContain(name.replace('.', '/').concat(".class"))) {
+						try {
+							c = findClass(name);
+							defined = true;
+						} catch (ClassNotFoundException e) {
+							// pass
+						}
+					}
+				}
+
+				if (c == null) {
+					c = getParent().loadClass(name);
+				}
+
+				if (c == null) {
+					throw new ClassNotFoundException(name);
+				}
+
+				if (resolve) {
+					resolveClass(c);
+				}
+
+				ClassLoadObserver observer = this.observer;
+
+				if (observer != null && c.getClassLoader() == this) {
+					observer.classLoaded(name);
+				}
+
+				return c;
+			}
+		} finally {
+			if (event != null) event.complete(this, name, c, defined);
 		}
 	}
+
+	public interface ClassLoadObserver {
+		void classLoaded(String name);
+	}
 }
@@ -0,0 +1,483 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.loader.launch.server;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * Uncompressed copy of every jar on a class path in a single file, read through a memory mapping so class and resource
+ * bytes are handed out without inflating or copying them to the heap.
+ *
+ * <p>Only the entry that wins on the class path is kept for each name, the same one a {@code URLClassLoader} would find.
+ * Entries of multi-release jars are stored under their unversioned name together with their version, the highest
+ * version supported by the running JVM is used. They can also be found under their full {@code META-INF/versions/}
+ * name, like in the jar itself.</p>
+ *
+ * <p>The file holds the entry data, followed by the names, a table of fixed-size records sorted by name hash, the
+ * manifest of every jar and a trailer pointing at each of them. Lookups binary search the mapped table directly.
+ * Jars are numbered like the {@link ClassPathIndex} the archive is built for, and the archive is only reused while
+ * that index has the same key. It has to be smaller than 2 GiB to be mapped at once.</p>
+ */
+public final class LaunchArchive {
+	public static final String PROPERTY = "fabric.wrapper.launchArchive";
+
+	private static final int MAGIC = 0x46574C41;
+	private static final int FORMAT = 2;
+	private static final int TRAILER_SIZE = 24;
+	private static final int RECORD_SIZE = 24;
+	private static final String VERSIONS_DIR = "META-INF/versions/";
+	private static final int RUNTIME_VERSION = Runtime.version().feature();
+	private static final Manifest NO_MANIFEST = new Manifest();
+
+	private final ByteBuffer buffer;
+	private final int names;
+	private final int records;
+	private final int count;
+	private final int[] manifestOffsets;
+	private final int[] manifestLengths;
+	private final AtomicReferenceArray<Manifest> manifests;
+
+	private LaunchArchive(ByteBuffer buffer, int names, int records, int count, int[] manifestOffsets, int[] manifestLengths) {
+		this.buffer = buffer;
+		this.names = names;
+		this.records = records;
+		this.count = count;
+		this.manifestOffsets = manifestOffsets;
+		this.manifestLengths = manifestLengths;
+		this.manifests = new AtomicReferenceArray<>(manifestOffsets.length);
+	}
+
+	/**
+	 * Maps the archive at {@code file}.
+	 *
+	 * @return the archive, {@code null} if there is none or it was built for a different class path
+	 */
+	public static LaunchArchive open(Path file, String key) throws IOException {
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+
+			if (size < TRAILER_SIZE) {
+				return null;
+			} else if (size > Integer.MAX_VALUE) {
+				throw new IOException("Launch archive " + file + " is too large to be mapped");
+			}
+
+			// the trailer and key are checked with plain reads, a stale archive must not stay mapped: that would keep it
+			// from being replaced on Windows
+			int trailer = (int) size - TRAILER_SIZE;
+			ByteBuffer trailerData = read(channel, trailer, TRAILER_SIZE);
+
+			if (trailerData.getInt(20) != MAGIC || trailerData.getInt(16) != FORMAT) {
+				return null;
+			}
+
+			int names = trailerData.getInt(0);
+			int records = trailerData.getInt(4);
+			int count = trailerData.getInt(8);
+			int jars = trailerData.getInt(12);
+
+			if (jars < 0 || jars > trailer) {
+				return null;
+			}
+
+			byte[] jarSection = read(channel, jars, trailer - jars).array();
+
+			try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(jarSection))) {
+				if (!in.readUTF().equals(key)) {
+					return null;
+				}
+
+				int[] manifestOffsets = new int[in.readInt()];
+				int[] manifestLengths = new int[manifestOffsets.length];
+
+				for (int i = 0; i < manifestOffsets.length; i++) {
+					manifestOffsets[i] = in.readInt();
+					manifestLengths[i] = in.readInt();
+				}
+
+				// the mapping stays valid after the channel is closed
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				return new LaunchArchive(buffer, names, records, count, manifestOffsets, manifestLengths);
+			}
+		}
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer data = ByteBuffer.allocate(length);
+
+		while (data.hasRemaining()) {
+			if (channel.read(data, position + data.position()) < 0) {
+				throw new EOFException("Unexpected end of launch archive");
+			}
+		}
+
+		return data.flip();
+	}
+
+	/**
+	 * @return the entry called {@code name}, -1 if there is none
+	 */
+	public int find(String name) {
+		int hash = name.hashCode();
+		int low = 0;
+		int high = count - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+
+			if (buffer.getInt(records + middle * RECORD_SIZE) < hash) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		int found = -1;
+		int foundVersion = -1;
+
+		for (int entry = low; entry < count; entry++) {
+			int record = records + entry * RECORD_SIZE;
+
+			if (buffer.getInt(record) != hash) {
+				break;
+			}
+
+			int version = buffer.getInt(record + 12) & 0xFF;
+
+			if (version <= RUNTIME_VERSION && version > foundVersion && nameEquals(record, name)) {
+				found = entry;
+				foundVersion = version;
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 * @return the class path position of the jar {@code entry} was copied from
+	 */
+	public int getJar(int entry) {
+		return buffer.getInt(records + entry * RECORD_SIZE + 12) >>> 8;
+	}
+
+	/**
+	 * @return a read-only view of the content of {@code entry}, positioned at its start and limited to its end
+	 */
+	public ByteBuffer getData(int entry) {
+		int record = records + entry * RECORD_SIZE;
+		return slice(buffer.getInt(record + 16), buffer.getInt(record + 20));
+	}
+
+	public InputStream getInputStream(int entry) {
+		return new MappedInputStream(getData(entry));
+	}
+
+	/**
+	 * @return the manifest of the jar at class path position {@code jar}, {@code null} if it has none
+	 */
+	public Manifest getManifest(int jar) throws IOException {
+		Manifest manifest = manifests.get(jar);
+
+		if (manifest == null) {
+			if (manifestOffsets[jar] < 0) {
+				manifest = NO_MANIFEST;
+			} else {
+				manifest = new Manifest(new MappedInputStream(slice(manifestOffsets[jar], manifestLengths[jar])));
+			}
+
+			// parsed again if two threads get here at once, both results are the same
+			manifests.set(jar, manifest);
+		}
+
+		return manifest == NO_MANIFEST ? null : manifest;
+	}
+
+	private ByteBuffer slice(int offset, int length) {
+		ByteBuffer data = buffer.duplicate();
+		data.position(offset).limit(offset + length);
+		return data;
+	}
+
+	private boolean nameEquals(int record, String name) {
+		int offset = names + buffer.getInt(record + 4);
+		int length = buffer.getInt(record + 8);
+
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+
+			if (c >= 0x80) {
+				// stored as UTF-8, only ASCII can be compared char by char
+				return Arrays.equals(name.getBytes(StandardCharsets.UTF_8), getBytes(offset, length));
+			} else if (i >= length || buffer.get(offset + i) != c) {
+				return false;
+			}
+		}
+
+		return length == name.length();
+	}
+
+	private byte[] getBytes(int offset, int length) {
+		byte[] bytes = new byte[length];
+		buffer.duplicate().position(offset).get(bytes);
+		return bytes;
+	}
+
+	private static final class MappedInputStream extends InputStream {
+		private final ByteBuffer data;
+
+		MappedInputStream(ByteBuffer data) {
+			this.data = data;
+		}
+
+		@Override
+		public int read() {
+			return data.hasRemaining() ? data.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			} else if (!data.hasRemaining()) {
+				return -1;
+			}
+
+			len = Math.min(len, data.remaining());
+			data.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public long skip(long n) {
+			int skipped = (int) Math.max(0, Math.min(n, data.remaining()));
+			data.position(data.position() + skipped);
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return data.remaining();
+		}
+	}
+
+	/**
+	 * Writes a new archive, jar by jar in class path order. Nothing replaces an existing archive until {@link #finish} succeeds.
+	 */
+	public static final class Writer implements Closeable {
+		private final Path file;
+		private final Path tmpFile;
+		private final DataOutputStream out;
+		private final int[] manifestOffsets;
+		private final int[] manifestLengths;
+		private final boolean[] multiRelease;
+		private final Map<String, Integer> owners = new HashMap<>();
+		private final Set<String> added = new HashSet<>();
+		private final List<Record> entries = new ArrayList<>();
+		private long position;
+		private boolean finished;
+
+		public Writer(Path file, int jars) throws IOException {
+			Files.createDirectories(file.getParent());
+			this.file = file;
+			this.tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+			this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile), 256 * 1024));
+			this.manifestOffsets = new int[jars];
+			this.manifestLengths = new int[jars];
+			this.multiRelease = new boolean[jars];
+			Arrays.fill(manifestOffsets, -1);
+		}
+
+		/**
+		 * Stores the manifest of a jar for its packages, it has to be added before the entries of that jar.
+		 */
+		public void addManifest(int jar, byte[] manifest) throws IOException {
+			Attributes attributes = new Manifest(new ByteArrayInputStream(manifest)).getMainAttributes();
+			multiRelease[jar] = "true".equalsIgnoreCase(attributes.getValue(Attributes.Name.MULTI_RELEASE));
+			manifestOffsets[jar] = write(manifest, manifest.length);
+			manifestLengths[jar] = manifest.length;
+		}
+
+		/**
+		 * Adds the content of entry {@code name} of a jar.
+		 *
+		 * @return false if it was left out because an earlier jar has an entry with the same name
+		 */
+		public boolean add(int jar, String name, byte[] data, int length) throws IOException {
+			String baseName = name;
+			int version = 0;
+
+			if (multiRelease[jar] && name.startsWith(VERSIONS_DIR)) {
+				int end = name.indexOf('/', VERSIONS_DIR.length());
+
+				try {
+					version = end < 0 ? 0 : Integer.parseInt(name.substring(VERSIONS_DIR.length(), end));
+				} catch (NumberFormatException e) {
+					// not a versioned entry
+				}
+
+				if (version >= 9 && version <= 0xFF) {
+					baseName = name.substring(end + 1);
+				} else {
+					version = 0;
+				}
+			}
+
+			int offset = -1;
+
+			// the full name of a versioned entry shares its data
+			if (version > 0 && claim(jar, name, 0)) {
+				offset = write(data, length);
+				entries.add(new Record(name, jar << 8, offset, length));
+			}
+
+			if (claim(jar, baseName, version)) {
+				entries.add(new Record(baseName, jar << 8 | version, offset < 0 ? write(data, length) : offset, length));
+				return true;
+			}
+
+			return offset >= 0;
+		}
+
+		private boolean claim(int jar, String name, int version) {
+			Integer owner = owners.putIfAbsent(name, jar);
+			return (owner == null || owner == jar) && added.add(version + "/" + name);
+		}
+
+		/**
+		 * Writes the index and replaces the archive at the target path with the new one.
+		 */
+		public void finish(String key) throws IOException {
+			entries.sort(Comparator.comparingInt(record -> record.hash));
+
+			int names = (int) position;
+
+			for (Record record : entries) {
+				record.nameOffset = (int) (position - names);
+				write(record.name, record.name.length);
+			}
+
+			int records = checkOffset(position);
+
+			for (Record record : entries) {
+				out.writeInt(record.hash);
+				out.writeInt(record.nameOffset);
+				out.writeInt(record.name.length);
+				out.writeInt(record.source);
+				out.writeInt(record.offset);
+				out.writeInt(record.length);
+			}
+
+			position += (long) entries.size() * RECORD_SIZE;
+			int jars = checkOffset(position);
+			int start = out.size();
+			out.writeUTF(key);
+			out.writeInt(manifestOffsets.length);
+
+			for (int i = 0; i < manifestOffsets.length; i++) {
+				out.writeInt(manifestOffsets[i]);
+				out.writeInt(manifestLengths[i]);
+			}
+
+			position += out.size() - start;
+			checkOffset(position + TRAILER_SIZE);
+
+			out.writeInt(names);
+			out.writeInt(records);
+			out.writeInt(entries.size());
+			out.writeInt(jars);
+			out.writeInt(FORMAT);
+			out.writeInt(MAGIC);
+			out.close();
+
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+			finished = true;
+		}
+
+		private int write(byte[] data, int length) throws IOException {
+			int offset = checkOffset(position);
+			checkOffset(position + length);
+			out.write(data, 0, length);
+			position += length;
+			return offset;
+		}
+
+		private static int checkOffset(long position) throws IOException {
+			if (position > Integer.MAX_VALUE) {
+				throw new IOException("Launch archive exceeds 2 GiB and can't be mapped");
+			}
+
+			return (int) position;
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+
+			if (!finished) {
+				Files.deleteIfExists(tmpFile);
+			}
+		}
+	}
+
+	private static final class Record {
+		final byte[] name;
+		final int hash;
+		final int source;
+		final int offset;
+		final int length;
+		int nameOffset;
+
+		Record(String name, int source, int offset, int length) {
+			this.name = name.getBytes(StandardCharsets.UTF_8);
+			this.hash = name.hashCode();
+			this.source = source;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.loader.launch.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * A Bloom filter over the entry names of the class path, answers "definitely not there" without opening any jar.
+ */
+final class NameFilter {
+	private static final int BITS_PER_NAME = 10;
+	private static final int HASHES = 7;
+
+	private final long[] bits;
+
+	private NameFilter(long[] bits) {
+		this.bits = bits;
+	}
+
+	static NameFilter of(Collection<String> names) {
+		long size = Math.max(64, (long) names.size() * BITS_PER_NAME);
+		NameFilter filter = new NameFilter(new long[(int) ((size + 63) / 64)]);
+
+		for (String name : names) {
+			filter.add(name);
+		}
+
+		return filter;
+	}
+
+	boolean mightContain(String name) {
+		long hash = hash(name);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		long size = (long) bits.length * 64;
+
+		for (int i = 0; i < HASHES; i++) {
+			long bit = Integer.toUnsignedLong(h1 + i * h2) % size;
+
+			if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private void add(String name) {
+		long hash = hash(name);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		long size = (long) bits.length * 64;
+
+		for (int i = 0; i < HASHES; i++) {
+			long bit = Integer.toUnsignedLong(h1 + i * h2) % size;
+			bits[(int) (bit >>> 6)] |= 1L << bit;
+		}
+	}
+
+	// 64 bit FNV-1a, the two halves are used as independent hashes
+	private static long hash(String name) {
+		long hash = 0xcbf29ce484222325L;
+
+		for (int i = 0; i < name.length(); i++) {
+			hash ^= name.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+
+		return hash;
+	}
+
+	static NameFilter read(DataInputStream in) throws IOException {
+		long[] bits = new long[in.readInt()];
+
+		for (int i = 0; i < bits.length; i++) {
+			bits[i] = in.readLong();
+		}
+
+		return new NameFilter(bits);
+	}
+
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(bits.length);
+
+		for (long word : bits) {
+			out.writeLong(word);
+		}
+	}
+}
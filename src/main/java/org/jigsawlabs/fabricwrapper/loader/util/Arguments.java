@@ -20,13 +20,21 @@ import java.util.*;
 
 public final class Arguments {
 	public static final String GAME_VERSION = "fabric.gameVersion";
+	public static final String EXPORT_LAUNCH_JAR = "export-launch-jar";
+	public static final String VERIFY = "verify";
+	public static final String CDS = "cds";
+
+	/** Value-less options handled by the wrapper itself, they are not passed on to the server. */
+	private static final Set<String> WRAPPER_FLAGS = new HashSet<>(Arrays.asList(EXPORT_LAUNCH_JAR, VERIFY, CDS));
 
 	private final Map<String, String> values;
 	private final List<String> extraArgs;
+	private final Set<String> flags;
 
 	public Arguments() {
 		values = new LinkedHashMap<>();
 		extraArgs = new ArrayList<>();
+		flags = new HashSet<>();
 	}
 
 	public Collection<String> keys() {
@@ -41,6 +49,10 @@ public final class Arguments {
 		return values.containsKey(key);
 	}
 
+	public boolean hasFlag(String flag) {
+		return flags.contains(flag);
+	}
+
 	public String get(String key) {
 		return values.get(key);
 	}
@@ -64,7 +76,9 @@ public final class Arguments {
 	public void parse(List<String> args) {
 		for (int i = 0; i < args.size(); i++) {
 			String arg = args.get(i);
-			if (arg.startsWith("--") && i < args.size() - 1) {
+			if (arg.startsWith("--") && WRAPPER_FLAGS.contains(arg.substring(2))) {
+				flags.add(arg.substring(2));
+			} else if (arg.startsWith("--") && i < args.size() - 1) {
 				values.put(arg.substring(2), args.get(++i));
 			} else {
 				extraArgs.add(arg);
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.loader.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Matches strings against a set of prefixes in time proportional to the prefix length rather than the set size.
+ */
+public final class PrefixTrie {
+	private final Node root = new Node();
+
+	public PrefixTrie(Collection<String> prefixes) {
+		for (String prefix : prefixes) {
+			Node node = root;
+
+			for (int i = 0; i < prefix.length(); i++) {
+				node = node.getOrAdd(prefix.charAt(i));
+			}
+
+			node.end = true;
+		}
+	}
+
+	/**
+	 * @return true if one of the prefixes is a prefix of {@code string}
+	 */
+	public boolean matches(String string) {
+		Node node = root;
+
+		for (int i = 0; !node.end; i++) {
+			if (i == string.length() || (node = node.get(string.charAt(i))) == null) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static final class Node {
+		private char[] keys = new char[0];
+		private Node[] children = new Node[0];
+		private boolean end;
+
+		Node get(char key) {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == key) {
+					return children[i];
+				}
+			}
+
+			return null;
+		}
+
+		Node getOrAdd(char key) {
+			Node child = get(key);
+
+			if (child == null) {
+				child = new Node();
+				keys = Arrays.copyOf(keys, keys.length + 1);
+				children = Arrays.copyOf(children, children.length + 1);
+				keys[keys.length - 1] = key;
+				children[children.length - 1] = child;
+			}
+
+			return child;
+		}
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.server;
+
+import org.jigsawlabs.fabricwrapper.installer.util.InstallerProgress;
+import org.jigsawlabs.fabricwrapper.installer.util.RawZipFile;
+import org.jigsawlabs.fabricwrapper.loader.launch.server.LaunchArchive;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Builds launch jars with {@link org.jigsawlabs.fabricwrapper.installer.util.RawZipOutput} from libraries written by
+ * {@link ZipOutputStream} and reads them back with {@code java.util.zip}.
+ */
+class LaunchJarTest {
+    private static final InstallerProgress SILENT = new InstallerProgress() {
+        @Override
+        public void updateProgress(String text) {
+        }
+
+        @Override
+        public void error(Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+    };
+
+    @TempDir
+    Path dir;
+
+    private final Random random = new Random(1);
+
+    @Test
+    void copiesStoredDeflatedAndDataDescriptorEntries() throws IOException {
+        Map<String, byte[]> expected = new LinkedHashMap<>();
+
+        // ZipOutputStream writes deflated entries with a data descriptor unless the sizes and CRC are known up front
+        Path descriptors = dir.resolve("descriptors.jar");
+        Map<String, byte[]> descriptorEntries = entries("com/example/descriptor/", 20, expected);
+
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(descriptors))) {
+            out.putNextEntry(new ZipEntry("com/example/descriptor/"));
+            out.closeEntry();
+
+            for (Map.Entry<String, byte[]> entry : descriptorEntries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+
+        Path stored = dir.resolve("stored.jar");
+        Map<String, byte[]> storedEntries = entries("com/example/stored/", 20, expected);
+
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(stored))) {
+            for (Map.Entry<String, byte[]> entry : storedEntries.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                zipEntry.setMethod(ZipEntry.STORED);
+                zipEntry.setSize(entry.getValue().length);
+                zipEntry.setCompressedSize(entry.getValue().length);
+                zipEntry.setCrc(crc(entry.getValue()));
+                out.putNextEntry(zipEntry);
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+
+        Path deflated = dir.resolve("deflated.jar");
+        Map<String, byte[]> deflatedEntries = entries("com/example/deflated/", 20, expected);
+
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(deflated))) {
+            for (Map.Entry<String, byte[]> entry : deflatedEntries.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                zipEntry.setSize(entry.getValue().length);
+                zipEntry.setCompressedSize(deflatedSize(entry.getValue()));
+                zipEntry.setCrc(crc(entry.getValue()));
+                out.putNextEntry(zipEntry);
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+
+        for (Path library : Arrays.asList(descriptors, stored, deflated)) {
+            try (RawZipFile zip = new RawZipFile(library)) {
+                for (RawZipFile.Entry entry : zip.getEntries()) {
+                    if (entry.isDirectory()) continue;
+
+                    assertArrayEquals(expected.get(entry.name), zip.read(entry), entry.name + " in " + library.getFileName());
+                }
+            }
+        }
+
+        Path launchJar = dir.resolve("launch.jar");
+        ServerInstaller.makeLaunchJar(launchJar, "com.example.Main", "com.example.JarMain", "fingerprint", Arrays.asList(descriptors, stored, deflated), SILENT);
+
+        try (ZipFile zip = new ZipFile(launchJar.toFile())) {
+            for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+                ZipEntry zipEntry = zip.getEntry(entry.getKey());
+                assertNotNull(zipEntry, entry.getKey());
+                assertEquals(crc(entry.getValue()), zipEntry.getCrc(), entry.getKey());
+                assertEquals(entry.getValue().length, zipEntry.getSize(), entry.getKey());
+
+                try (InputStream is = zip.getInputStream(zipEntry)) {
+                    assertArrayEquals(entry.getValue(), readAll(is), entry.getKey());
+                }
+            }
+
+            assertNull(zip.getEntry("com/example/descriptor/"));
+            assertEquals(expected.size() + 2, zip.size());
+
+            try (InputStream is = zip.getInputStream(zip.getEntry("META-INF/MANIFEST.MF"))) {
+                assertEquals("com.example.JarMain", new Manifest(is).getMainAttributes().getValue("Main-Class"));
+            }
+        }
+
+        // ZipInputStream checks the local headers and the CRC of every entry while reading
+        Map<String, byte[]> streamed = new HashMap<>();
+
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(launchJar))) {
+            ZipEntry entry;
+
+            while ((entry = in.getNextEntry()) != null) {
+                streamed.put(entry.getName(), readAll(in));
+            }
+        }
+
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getValue(), streamed.get(entry.getKey()), entry.getKey());
+        }
+    }
+
+    @Test
+    void mergesServicesAndKeepsFirstDuplicate() throws IOException {
+        Path first = dir.resolve("first.jar");
+        Path second = dir.resolve("second.jar");
+        writeJar(first, "META-INF/services/com.example.Service", "# first\ncom.example.First\n", "com/example/Shared.class", "first");
+        writeJar(second, "META-INF/services/com.example.Service", "com.example.Second # comment\ncom.example.First\n", "com/example/Shared.class", "second");
+
+        Path launchJar = dir.resolve("launch.jar");
+        ServerInstaller.makeLaunchJar(launchJar, "com.example.Main", "com.example.JarMain", "fingerprint", Arrays.asList(first, second), SILENT);
+
+        try (ZipFile zip = new ZipFile(launchJar.toFile())) {
+            try (InputStream is = zip.getInputStream(zip.getEntry("META-INF/services/com.example.Service"))) {
+                List<String> services = Arrays.asList(new String(readAll(is), StandardCharsets.UTF_8).trim().split("\\s+"));
+                assertEquals(Arrays.asList("com.example.First", "com.example.Second"), services);
+            }
+
+            try (InputStream is = zip.getInputStream(zip.getEntry("com/example/Shared.class"))) {
+                assertEquals("first", new String(readAll(is), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    void zip64AndOversizedEntriesFallBackToStreaming() throws IOException {
+        // a zip64 size sentinel and a size running into the central directory, both only in the central directory
+        for (int size : new int[]{0xFFFFFFFF, 0x7FFFFFFF}) {
+            Path jar = dir.resolve("library-" + Integer.toHexString(size) + ".jar");
+            writeJar(jar, "META-INF/services/com.example.Service", "com.example.First\n", "com/example/Large.class", "large");
+            patchCentralSizes(jar, "com/example/Large.class", size);
+
+            assertThrows(ZipException.class, () -> new RawZipFile(jar).close());
+
+            Path launchJar = dir.resolve("launch-" + Integer.toHexString(size) + ".jar");
+            ServerInstaller.makeLaunchJar(launchJar, "com.example.Main", "com.example.JarMain", "fingerprint", Arrays.asList(jar), SILENT);
+
+            try (ZipFile zip = new ZipFile(launchJar.toFile())) {
+                try (InputStream is = zip.getInputStream(zip.getEntry("com/example/Large.class"))) {
+                    assertEquals("large", new String(readAll(is), StandardCharsets.UTF_8));
+                }
+
+                try (InputStream is = zip.getInputStream(zip.getEntry("META-INF/services/com.example.Service"))) {
+                    assertEquals("com.example.First", new String(readAll(is), StandardCharsets.UTF_8).trim());
+                }
+            }
+
+            Path archiveFile = dir.resolve("launch-" + Integer.toHexString(size) + ".bin");
+            ServerInstaller.makeLaunchArchive(archiveFile, new Path[]{jar}, "key", SILENT);
+            LaunchArchive archive = LaunchArchive.open(archiveFile, "key");
+            assertNotNull(archive);
+            int entry = archive.find("com/example/Large.class");
+            assertEquals(0, archive.getJar(entry));
+
+            try (InputStream is = archive.getInputStream(entry)) {
+                assertEquals("large", new String(readAll(is), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private Map<String, byte[]> entries(String prefix, int count, Map<String, byte[]> all) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+
+        for (int i = 0; i < count; i++) {
+            // mostly compressible like class files, with an empty entry and a few random ones
+            byte[] data = new byte[i == 0 ? 0 : random.nextInt(8192)];
+
+            for (int j = 0; j < data.length; j++) {
+                data[j] = (byte) (i % 5 == 4 ? random.nextInt() : 'a' + random.nextInt(8));
+            }
+
+            entries.put(prefix + "Entry" + i + ".class", data);
+        }
+
+        all.putAll(entries);
+        return entries;
+    }
+
+    private static void writeJar(Path jar, String... entries) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static void patchCentralSizes(Path jar, String name, int size) throws IOException {
+        byte[] bytes = Files.readAllBytes(jar);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+        for (int i = bytes.length - 46; i >= 0; i--) {
+            if (buffer.getInt(i) == 0x02014b50 && Arrays.equals(Arrays.copyOfRange(bytes, i + 46, i + 46 + nameBytes.length), nameBytes)) {
+                buffer.putInt(i + 20, size);
+                buffer.putInt(i + 24, size);
+                Files.write(jar, bytes);
+                return;
+            }
+        }
+
+        throw new IllegalArgumentException(name + " not in " + jar);
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static long deflatedSize(byte[] data) {
+        // same settings as ZipOutputStream
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[8192];
+        long size = 0;
+
+        while (!deflater.finished()) {
+            size += deflater.deflate(buffer);
+        }
+
+        deflater.end();
+        return size;
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int len;
+
+        while ((len = is.read(buffer)) >= 0) {
+            out.write(buffer, 0, len);
+        }
+
+        return out.toByteArray();
+    }
+}
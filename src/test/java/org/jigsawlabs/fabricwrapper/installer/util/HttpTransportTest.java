@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Hedged requests against local servers standing in for the meta server and a mirror. The primary is reached through
+ * {@code 127.0.0.1} and the mirror through {@code localhost}, so their latencies are tracked separately.
+ */
+class HttpTransportTest {
+	private final List<HttpServer> servers = new ArrayList<>();
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private String metaServerUrl;
+
+	@BeforeEach
+	void setUp() {
+		metaServerUrl = Reference.metaServerUrl;
+	}
+
+	@AfterEach
+	void tearDown() {
+		Reference.metaServerUrl = metaServerUrl;
+		System.clearProperty(Reference.META_MIRRORS_PROPERTY);
+		System.clearProperty(LatencyTracker.DELAY_PROPERTY);
+		servers.forEach(server -> server.stop(0));
+		executor.shutdownNow();
+	}
+
+	@Test
+	void slowPrimaryIsHedgedToMirror() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch loserClosed = new CountDownLatch(1);
+		AtomicInteger mirrorRequests = new AtomicInteger();
+
+		start("127.0.0.1", exchange -> {
+			await(release);
+
+			// a body too large to be buffered, writing it fails once the client drops the losing response
+			exchange.sendResponseHeaders(200, 0);
+			byte[] chunk = new byte[64 * 1024];
+
+			try (OutputStream out = exchange.getResponseBody()) {
+				for (int i = 0; i < 1024; i++) {
+					out.write(chunk);
+				}
+			} catch (IOException e) {
+				loserClosed.countDown();
+			}
+		}, true);
+		start("localhost", exchange -> {
+			mirrorRequests.incrementAndGet();
+			respond(exchange, 200, "mirror");
+		}, false);
+		System.setProperty(LatencyTracker.DELAY_PROPERTY, "100");
+
+		long start = System.nanoTime();
+		assertEquals("mirror", HttpTransport.getText(new URL(Reference.getMetaServerEndpoint("v2/versions/game")), "*/*"));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "the mirror answered only after the primary");
+		assertEquals(1, mirrorRequests.get());
+
+		release.countDown();
+		assertTrue(loserClosed.await(10, TimeUnit.SECONDS), "the losing response was not closed");
+	}
+
+	@Test
+	void fastPrimaryIsNotHedged() throws Exception {
+		AtomicInteger mirrorRequests = new AtomicInteger();
+		start("127.0.0.1", exchange -> respond(exchange, 200, "primary"), true);
+		start("localhost", exchange -> {
+			mirrorRequests.incrementAndGet();
+			respond(exchange, 200, "mirror");
+		}, false);
+		System.setProperty(LatencyTracker.DELAY_PROPERTY, "5000");
+
+		assertEquals("primary", HttpTransport.getText(new URL(Reference.getMetaServerEndpoint("v2/versions/game")), "*/*"));
+		assertEquals(0, mirrorRequests.get());
+	}
+
+	@Test
+	void serverErrorMovesOnToMirror() throws Exception {
+		start("127.0.0.1", exchange -> respond(exchange, 503, "unavailable"), true);
+		start("localhost", exchange -> respond(exchange, 200, "mirror"), false);
+		System.setProperty(LatencyTracker.DELAY_PROPERTY, "60000");
+
+		long start = System.nanoTime();
+		assertEquals("mirror", HttpTransport.getText(new URL(Reference.getMetaServerEndpoint("v2/versions/game")), "*/*"));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30), "waited for the hedge delay after an error");
+	}
+
+	@Test
+	void connectionFailureMovesOnToMirror() throws Exception {
+		HttpServer closed = start("127.0.0.1", exchange -> respond(exchange, 200, "primary"), true);
+		closed.stop(0);
+		start("localhost", exchange -> respond(exchange, 200, "mirror"), false);
+		System.setProperty(LatencyTracker.DELAY_PROPERTY, "60000");
+
+		assertEquals("mirror", HttpTransport.getText(new URL(Reference.getMetaServerEndpoint("v2/versions/game")), "*/*"));
+	}
+
+	@Test
+	void errorIsReturnedWhenEveryMirrorFails() throws Exception {
+		start("127.0.0.1", exchange -> respond(exchange, 503, "primary"), true);
+		start("localhost", exchange -> respond(exchange, 502, "mirror"), false);
+
+		HttpResponse<InputStream> response = HttpTransport.send(HttpTransport.request(new URL(Reference.getMetaServerEndpoint("v2/versions/game"))).build());
+		response.body().close();
+		assertTrue(response.statusCode() == 502 || response.statusCode() == 503);
+	}
+
+	private HttpServer start(String host, Handler handler, boolean primary) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(host, 0), 0);
+		server.setExecutor(executor);
+		server.createContext("/", exchange -> {
+			try {
+				handler.handle(exchange);
+			} finally {
+				exchange.close();
+			}
+		});
+		server.start();
+		servers.add(server);
+
+		String url = "http://" + host + ":" + server.getAddress().getPort() + "/";
+
+		if (primary) {
+			Reference.metaServerUrl = url;
+		} else {
+			System.setProperty(Reference.META_MIRRORS_PROPERTY, url);
+		}
+
+		return server;
+	}
+
+	private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(code, bytes.length);
+
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(30, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private interface Handler {
+		void handle(HttpExchange exchange) throws IOException;
+	}
+}
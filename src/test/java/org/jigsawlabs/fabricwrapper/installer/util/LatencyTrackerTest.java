@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.installer.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LatencyTrackerTest {
+	@AfterEach
+	void tearDown() {
+		System.clearProperty(LatencyTracker.DELAY_PROPERTY);
+		System.clearProperty(LatencyTracker.PERCENTILE_PROPERTY);
+	}
+
+	@Test
+	void usesConfiguredDelayUntilEnoughSamples() {
+		LatencyTracker tracker = new LatencyTracker();
+		System.setProperty(LatencyTracker.DELAY_PROPERTY, "250");
+
+		for (int i = 0; i < 7; i++) {
+			tracker.record("example.com", 10);
+		}
+
+		assertEquals(250, tracker.getHedgeDelay("example.com"));
+		assertEquals(250, tracker.getHedgeDelay("unknown.example.com"));
+	}
+
+	@Test
+	void delayIsPercentileOfRecentSamples() {
+		LatencyTracker tracker = new LatencyTracker();
+
+		for (int i = 1; i <= 20; i++) {
+			tracker.record("example.com", i * 10);
+		}
+
+		assertEquals(190, tracker.getHedgeDelay("example.com"));
+
+		System.setProperty(LatencyTracker.PERCENTILE_PROPERTY, "50");
+		assertEquals(100, tracker.getHedgeDelay("example.com"));
+	}
+
+	@Test
+	void onlyRecentSamplesCount() {
+		LatencyTracker tracker = new LatencyTracker();
+
+		for (int i = 0; i < 64; i++) {
+			tracker.record("example.com", 5000);
+		}
+
+		for (int i = 0; i < 64; i++) {
+			tracker.record("example.com", 20);
+		}
+
+		assertEquals(20, tracker.getHedgeDelay("example.com"));
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.loader.launch.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClassPathIndexTest {
+	private static final List<String> NAMES = Arrays.asList(
+			"com/example", "com/example/", "com/example/a.json", "com/example/Missing.class", "com/exampl",
+			"com/other/b.json", "com/other", "com/other/",
+			"META-INF/versions/11/com/example/a.json", "META-INF/versions/11/com/example/", "META-INF/versions/11/com/example",
+			"META-INF/versions/11", "META-INF/MANIFEST.MF", "missing.txt");
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void filterHasNoFalseNegatives() throws IOException {
+		URL[] urls = {jar("first.jar", true).toUri().toURL(), jar("second.jar", false).toUri().toURL()};
+		ClassPathIndex index = ClassPathIndex.load(dir.resolve("class-index.bin"), urls);
+
+		// a second load reads the saved index
+		ClassPathIndex saved = ClassPathIndex.load(dir.resolve("class-index.bin"), urls);
+		assertEquals(index.getKey(), saved.getKey());
+
+		try (URLClassLoader plain = new URLClassLoader(urls, null);
+			 InjectingURLClassLoader indexed = new InjectingURLClassLoader(urls, ClassLoader.getPlatformClassLoader(), saved)) {
+			for (String name : NAMES) {
+				boolean found = plain.findResource(name) != null;
+				assertEquals(found, indexed.findResource(name) != null, name);
+
+				if (found) {
+					assertTrue(saved.mightContain(name), name);
+				}
+			}
+		}
+	}
+
+	@Test
+	void packagesMapToTheirJars() throws IOException {
+		URL[] urls = {jar("first.jar", true).toUri().toURL(), jar("second.jar", false).toUri().toURL()};
+		ClassPathIndex index = ClassPathIndex.build(urls);
+
+		assertTrue(index.isComplete());
+		assertArrayEquals(new int[] {0, 1}, index.getJars("com/example"));
+		assertArrayEquals(new int[] {1}, index.getJars("com/other"));
+		assertArrayEquals(new int[0], index.getJars("com/missing"));
+		assertFalse(index.mightContain("com/missing/Missing.class"));
+	}
+
+	private Path jar(String name, boolean directories) throws IOException {
+		Path jar = dir.resolve(name);
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().put(new Attributes.Name("Multi-Release"), "true");
+
+		try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar), manifest)) {
+			if (directories) {
+				out.putNextEntry(new ZipEntry("com/"));
+				out.putNextEntry(new ZipEntry("com/example/"));
+				out.putNextEntry(new ZipEntry("META-INF/versions/11/com/example/"));
+			}
+
+			out.putNextEntry(new ZipEntry("com/example/a.json"));
+			out.write(name.getBytes(StandardCharsets.UTF_8));
+			out.putNextEntry(new ZipEntry("META-INF/versions/11/com/example/a.json"));
+			out.write(name.getBytes(StandardCharsets.UTF_8));
+
+			if (!directories) {
+				out.putNextEntry(new ZipEntry("com/other/"));
+				out.putNextEntry(new ZipEntry("com/other/b.json"));
+				out.write(name.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+
+		return jar;
+	}
+}
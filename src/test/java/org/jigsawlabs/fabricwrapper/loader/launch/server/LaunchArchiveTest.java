@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2021 Awakened Redstone
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jigsawlabs.fabricwrapper.loader.launch.server;
+
+import org.jigsawlabs.fabricwrapper.installer.server.ServerInstaller;
+import org.jigsawlabs.fabricwrapper.installer.util.InstallerProgress;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LaunchArchiveTest {
+	private static final String KEY = "class path key";
+	private static final InstallerProgress SILENT = new InstallerProgress() {
+		@Override
+		public void updateProgress(String text) {
+		}
+
+		@Override
+		public void error(Throwable throwable) {
+			throw new RuntimeException(throwable);
+		}
+	};
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void roundTrip() throws IOException {
+		Path file = dir.resolve("launch-archive.bin");
+
+		try (LaunchArchive.Writer writer = new LaunchArchive.Writer(file, 3)) {
+			writer.addManifest(0, manifest(true));
+			add(writer, 0, "a/A.txt", "base");
+			add(writer, 0, "META-INF/versions/9/a/A.txt", "java 9");
+			add(writer, 0, "META-INF/versions/200/a/A.txt", "java 200");
+			add(writer, 0, "META-INF/versions/9/a/Versioned.txt", "only versioned");
+
+			// shadowed by the first jar, but its other entries are kept
+			add(writer, 1, "a/A.txt", "second");
+			add(writer, 1, "b/B.txt", "second");
+			add(writer, 1, "META-INF/versions/9/a/A.txt", "second, not multi-release");
+
+			add(writer, 2, "b/B.txt", "third");
+			add(writer, 2, "c/C.txt", "third");
+			writer.finish(KEY);
+		}
+
+		LaunchArchive archive = LaunchArchive.open(file, KEY);
+		assertNotNull(archive);
+
+		assertContent(archive, "a/A.txt", 0, "java 9");
+		assertContent(archive, "META-INF/versions/9/a/A.txt", 0, "java 9");
+		assertContent(archive, "META-INF/versions/200/a/A.txt", 0, "java 200");
+		assertContent(archive, "a/Versioned.txt", 0, "only versioned");
+		assertContent(archive, "META-INF/versions/9/a/Versioned.txt", 0, "only versioned");
+		assertContent(archive, "b/B.txt", 1, "second");
+		assertContent(archive, "c/C.txt", 2, "third");
+		assertEquals(-1, archive.find("a/Missing.txt"));
+		assertEquals(-1, archive.find("a/"));
+
+		assertEquals("true", archive.getManifest(0).getMainAttributes().getValue(Attributes.Name.MULTI_RELEASE));
+		assertNull(archive.getManifest(1));
+	}
+
+	@Test
+	void staleArchiveIsReplaced() throws IOException {
+		Path file = dir.resolve("launch-archive.bin");
+
+		try (LaunchArchive.Writer writer = new LaunchArchive.Writer(file, 1)) {
+			add(writer, 0, "a/A.txt", "old");
+			writer.finish("old key");
+		}
+
+		assertNull(LaunchArchive.open(file, KEY));
+
+		try (LaunchArchive.Writer writer = new LaunchArchive.Writer(file, 1)) {
+			add(writer, 0, "a/A.txt", "new");
+			writer.finish(KEY);
+		}
+
+		assertContent(LaunchArchive.open(file, KEY), "a/A.txt", 0, "new");
+		assertNull(LaunchArchive.open(dir.resolve("missing.bin"), KEY));
+	}
+
+	@Test
+	void loaderFindsWhatURLClassLoaderFinds() throws IOException {
+		Path first = jar("first.jar", true, "a/A.txt", "META-INF/versions/9/a/A.txt", "META-INF/versions/11/a/B.txt", "c/");
+		Path second = jar("second.jar", false, "a/A.txt", "a/B.txt", "c/C.txt", "META-INF/versions/9/a/A.txt");
+		URL[] urls = {first.toUri().toURL(), second.toUri().toURL()};
+		ClassPathIndex index = ClassPathIndex.load(dir.resolve("class-index.bin"), urls);
+		Path file = dir.resolve("launch-archive.bin");
+		ServerInstaller.makeLaunchArchive(file, new Path[] {first, second}, index.getKey(), SILENT);
+
+		List<String> names = Arrays.asList("a/A.txt", "a/B.txt", "c/C.txt", "META-INF/versions/9/a/A.txt",
+				"META-INF/versions/11/a/B.txt", "META-INF/versions/11/a/A.txt", "a/Missing.txt", "c/", "c");
+
+		try (URLClassLoader plain = new URLClassLoader(urls, ClassLoader.getPlatformClassLoader());
+			 InjectingURLClassLoader archived = new InjectingURLClassLoader(urls, ClassLoader.getPlatformClassLoader(), index, LaunchArchive.open(file, index.getKey()))) {
+			for (String name : names) {
+				assertEquals(read(plain.getResourceAsStream(name)), read(archived.getResourceAsStream(name)), name);
+			}
+		}
+	}
+
+	private static void add(LaunchArchive.Writer writer, int jar, String name, String content) throws IOException {
+		byte[] data = content.getBytes(StandardCharsets.UTF_8);
+		writer.add(jar, name, data, data.length);
+	}
+
+	private static void assertContent(LaunchArchive archive, String name, int jar, String content) {
+		int entry = archive.find(name);
+		assertEquals(jar, entry < 0 ? -1 : archive.getJar(entry), name);
+
+		ByteBuffer data = archive.getData(entry);
+		byte[] bytes = new byte[data.remaining()];
+		data.get(bytes);
+		assertEquals(content, new String(bytes, StandardCharsets.UTF_8), name);
+	}
+
+	private static byte[] manifest(boolean multiRelease) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		manifestOf(multiRelease).write(out);
+		return out.toByteArray();
+	}
+
+	private static Manifest manifestOf(boolean multiRelease) {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+
+		if (multiRelease) {
+			manifest.getMainAttributes().put(Attributes.Name.MULTI_RELEASE, "true");
+		}
+
+		return manifest;
+	}
+
+	/**
+	 * A jar whose entries contain their own name and the jar name, directories end with a slash.
+	 */
+	private Path jar(String name, boolean multiRelease, String... entries) throws IOException {
+		Path jar = dir.resolve(name);
+
+		try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar), manifestOf(multiRelease))) {
+			for (String entry : entries) {
+				out.putNextEntry(new ZipEntry(entry));
+
+				if (!entry.endsWith("/")) {
+					out.write((name + " " + entry).getBytes(StandardCharsets.UTF_8));
+				}
+			}
+		}
+
+		return jar;
+	}
+
+	private static String read(InputStream is) throws IOException {
+		if (is == null) {
+			return null;
+		}
+
+		try (InputStream in = is) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+}